@@ -0,0 +1,100 @@
+/*
+ * Copyright 2022 okome.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.ietf.pkcs5;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import net.siisise.security.mac.HMAC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PBKDF1 / PBKDF2.
+ * digest と繰り返し数の組み合わせ.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class PBKDFBenchmark {
+
+    @Param({"MD5", "SHA-1", "SHA-256", "SHA-512"})
+    public String digest;
+
+    @Param({"1000", "10000"})
+    public int c;
+
+    /**
+     * PBKDF2 の出力長. ハッシュ長を超えると複数ブロックになる
+     */
+    @Param({"32", "64"})
+    public int dkLen;
+
+    private final byte[] password = "password".getBytes(StandardCharsets.UTF_8);
+    private final byte[] salt = "saltSALTsaltSALT".getBytes(StandardCharsets.UTF_8);
+
+    private MessageDigest md;
+    private HMAC hmac;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException {
+        md = MessageDigest.getInstance(digest);
+        hmac = new HMAC(MessageDigest.getInstance(digest));
+    }
+
+    /**
+     * PBKDF1 は MD2, MD5, SHA-1 のみ. 他はハッシュ長で打ち切る.
+     * @return DK
+     */
+    @Benchmark
+    public byte[] pbkdf1() {
+        return PBKDF1.pbkdf1(md, password, salt, c, Math.min(dkLen, md.getDigestLength()));
+    }
+
+    @Benchmark
+    public byte[] pbkdf2() {
+        return PBKDF2.pbkdf2(hmac, password, salt, c, dkLen);
+    }
+
+    @Benchmark
+    public byte[] pbkdf2HMAC() {
+        return PBKDF2HMAC.pbkdf2(md, PBKDF2HMAC.blockLength(digest), password, salt, c, dkLen);
+    }
+
+    @Benchmark
+    public byte[] pbkdf2Parallel() {
+        return PBKDF2.pbkdf2(() -> {
+            try {
+                return new HMAC(MessageDigest.getInstance(digest));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }, password, salt, c, dkLen);
+    }
+}
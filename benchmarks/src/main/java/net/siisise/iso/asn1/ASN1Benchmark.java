@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * DER の decode / encode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ASN1Benchmark {
+
+    @Param({"cert", "crl", "pkcs12"})
+    public String sample;
+
+    private byte[] der;
+    private ASN1Object decoded;
+    private byte[] out;
+    private ASN1DecodeCache cache;
+
+    @Setup
+    public void setup() throws IOException {
+        der = Samples.load(sample);
+        decoded = ASN1Util.toASN1(der);
+        out = new byte[der.length];
+        cache = new ASN1DecodeCache(1 << 20);
+    }
+
+    @Benchmark
+    public ASN1Object decode() throws IOException {
+        return ASN1Util.toASN1(der);
+    }
+
+    @Benchmark
+    public ASN1Object decodeStream() throws IOException {
+        return ASN1Decoder.toASN1(new ByteArrayInputStream(der));
+    }
+
+    @Benchmark
+    public ASN1Object decodeLazy() throws IOException {
+        return ASN1Util.toASN1Lazy(der);
+    }
+
+    /**
+     * 2回目以降はキャッシュから.
+     * @return 共有の木
+     * @throws IOException
+     */
+    @Benchmark
+    public ASN1Object decodeCached() throws IOException {
+        return cache.decode(der);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return decoded.encodeAll();
+    }
+
+    @Benchmark
+    public int encodeInto() {
+        return decoded.encodeAll(out, 0);
+    }
+
+    @Benchmark
+    public byte[] roundTrip() throws IOException {
+        return ASN1Util.toASN1(der).encodeAll();
+    }
+
+    /**
+     * 木を作らずにイベントだけ読む.
+     * @param bh
+     * @throws IOException
+     */
+    @Benchmark
+    public void streamReader(Blackhole bh) throws IOException {
+        try (ASN1StreamReader reader = new ASN1StreamReader(new ByteArrayInputStream(der))) {
+            while (reader.hasNext()) {
+                bh.consume(reader.next());
+            }
+        }
+    }
+}
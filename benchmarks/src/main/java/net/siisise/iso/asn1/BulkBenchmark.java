@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 証明書の束 (CA bundle) のデコード. 逐次と並列. Stream も.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkBenchmark {
+
+    @Param({"1000", "10000"})
+    public int count;
+
+    private byte[] der;
+    private Path derFile;
+    private Path pemFile;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] cert = Samples.load("cert");
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        StringBuilder pem = new StringBuilder();
+        Base64.Encoder b64 = Base64.getMimeEncoder(64, new byte[] {'\n'});
+        for (int i = 0; i < count; i++) {
+            bundle.write(cert);
+            pem.append("-----BEGIN CERTIFICATE-----\n");
+            pem.append(b64.encodeToString(cert));
+            pem.append("\n-----END CERTIFICATE-----\n");
+        }
+        der = bundle.toByteArray();
+        derFile = Files.createTempFile("bundle", ".der");
+        Files.write(derFile, der);
+        pemFile = Files.createTempFile("bundle", ".pem");
+        Files.write(pemFile, pem.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(derFile);
+        Files.deleteIfExists(pemFile);
+    }
+
+    @Benchmark
+    public List<ASN1Object> sequential() throws IOException {
+        return ASN1Util.toASN1List(der);
+    }
+
+    @Benchmark
+    public List<ASN1Object> parallel() throws IOException {
+        return ASN1Util.toASN1List(ByteBuffer.wrap(der), ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public List<ASN1Object> derFile() throws IOException {
+        return ASN1Util.toASN1List(derFile);
+    }
+
+    @Benchmark
+    public List<ASN1Object> pemFile() throws IOException {
+        return ASN1Util.toASN1List(pemFile);
+    }
+
+    @Benchmark
+    public long stream() {
+        return ASN1Util.stream(der).filter(o -> o instanceof ASN1Struct).count();
+    }
+
+    @Benchmark
+    public long streamParallel() {
+        return ASN1Util.stream(der).parallel().filter(o -> o instanceof ASN1Struct).count();
+    }
+}
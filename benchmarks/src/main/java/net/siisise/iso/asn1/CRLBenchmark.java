@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 大きな CRL のデコード. revokedCertificates の並列デコードあり/なし.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CRLBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int entries;
+
+    /**
+     * 並列にする値の長さ. 2147483647 は並列にしない
+     */
+    @Param({"2147483647", "1048576"})
+    public int threshold;
+
+    private byte[] der;
+    private int saved;
+
+    @Setup
+    public void setup() {
+        der = Samples.crl(entries);
+        saved = ASN1Decoder.getParallelThreshold();
+        ASN1Decoder.setParallelThreshold(threshold);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ASN1Decoder.setParallelThreshold(saved);
+    }
+
+    @Benchmark
+    public ASN1Object decode() throws IOException {
+        return ASN1Util.toASN1(der);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * OBJECTIDENTIFIER の decode / encode / 名前解決.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OIDBenchmark {
+
+    /**
+     * 短いもの, 証明書で多いもの, 大きい枝番号を含むもの
+     */
+    @Param({"2.5.4.3", "1.2.840.113549.1.1.11", "1.3.6.1.4.1.311.60.2.1.3", "2.25.329800735698586629295641978511506172918"})
+    public String oid;
+
+    private byte[] der;
+    private OBJECTIDENTIFIER decoded;
+
+    @Setup
+    public void setup() throws IOException {
+        der = new OBJECTIDENTIFIER(oid).encodeAll();
+        decoded = (OBJECTIDENTIFIER) ASN1Util.toASN1(der);
+    }
+
+    @Benchmark
+    public ASN1Object decode() throws IOException {
+        return ASN1Util.toASN1(der);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return decoded.encodeAll();
+    }
+
+    @Benchmark
+    public byte[] parseEncode() {
+        return new OBJECTIDENTIFIER(oid).encodeAll();
+    }
+
+    @Benchmark
+    public String getName() {
+        return decoded.getName();
+    }
+
+    @Benchmark
+    public String getShortName() {
+        return decoded.getShortName();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import net.siisise.iso.asn1.tag.ASN1String;
+import net.siisise.iso.asn1.tag.BITSTRING;
+import net.siisise.iso.asn1.tag.INTEGER;
+import net.siisise.iso.asn1.tag.NULL;
+import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
+import net.siisise.iso.asn1.tag.SEQUENCE;
+
+/**
+ * ベンチマーク用のサンプル.
+ * cert 自己署名 RSA 2048bit 証明書 (keytool で作成)
+ * pkcs12 cert の鍵と証明書を入れた PKCS #12 (パスワード changeit)
+ * crl 失効リストを模した DER (署名は中身なし)
+ */
+public class Samples {
+
+    /**
+     * サンプルの DER
+     * @param name cert, pkcs12, crl
+     * @return DER
+     * @throws IOException
+     */
+    public static byte[] load(String name) throws IOException {
+        switch (name) {
+            case "cert":
+                return resource("cert.der");
+            case "pkcs12":
+                return resource("keystore.p12");
+            case "crl":
+                return crl(1000);
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    static byte[] resource(String file) throws IOException {
+        try (InputStream in = Samples.class.getResourceAsStream(file)) {
+            if (in == null) {
+                throw new IOException(file + " not found");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int s;
+            while ((s = in.read(buf)) >= 0) {
+                out.write(buf, 0, s);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * RFC 5280 CertificateList の形だけ合わせたもの.
+     * @param entries revokedCertificates の数
+     * @return DER
+     */
+    public static byte[] crl(int entries) {
+        SEQUENCE tbs = new SEQUENCE();
+        tbs.add(integer(1)); // v2
+        tbs.add(algorithm("1.2.840.113549.1.1.11"));
+        SEQUENCE issuer = new SEQUENCE();
+        SEQUENCE rdn = new SEQUENCE(ASN1.SET);
+        SEQUENCE cn = new SEQUENCE();
+        cn.add(new OBJECTIDENTIFIER("2.5.4.3"));
+        cn.add(string(ASN1.UTF8String, "SoftLibPKI Bench CA"));
+        rdn.add(cn);
+        issuer.add(rdn);
+        tbs.add(issuer);
+        tbs.add(string(ASN1.UTCTime, "221001000000Z"));
+        tbs.add(string(ASN1.UTCTime, "221101000000Z"));
+        SEQUENCE revoked = new SEQUENCE();
+        for (int i = 0; i < entries; i++) {
+            SEQUENCE entry = new SEQUENCE();
+            INTEGER serial = new INTEGER();
+            serial.setValue(BigInteger.valueOf(0x10000000L + i * 7919L).shiftLeft(64).or(BigInteger.valueOf(i)));
+            entry.add(serial);
+            entry.add(string(ASN1.UTCTime, "2209" + two(i % 28 + 1) + two(i % 24) + "0000Z"));
+            revoked.add(entry);
+        }
+        tbs.add(revoked);
+
+        SEQUENCE crl = new SEQUENCE();
+        crl.add(tbs);
+        crl.add(algorithm("1.2.840.113549.1.1.11"));
+        BITSTRING sign = new BITSTRING();
+        sign.setValue(new byte[256]);
+        crl.add(sign);
+        return crl.encodeAll();
+    }
+
+    private static String two(int n) {
+        return n < 10 ? "0" + n : Integer.toString(n);
+    }
+
+    private static INTEGER integer(long v) {
+        INTEGER i = new INTEGER();
+        i.setValue(BigInteger.valueOf(v));
+        return i;
+    }
+
+    private static ASN1String string(ASN1 id, String val) {
+        ASN1String s = new ASN1String(id);
+        s.setValue(val);
+        return s;
+    }
+
+    private static SEQUENCE algorithm(String oid) {
+        SEQUENCE alg = new SEQUENCE();
+        alg.add(new OBJECTIDENTIFIER(oid));
+        alg.add(new NULL());
+        return alg;
+    }
+}
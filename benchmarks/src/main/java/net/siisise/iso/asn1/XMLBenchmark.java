@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * ASN1Util.toXML と XML からの復元. JSON, GSER も.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class XMLBenchmark {
+
+    @Param({"cert", "crl", "pkcs12"})
+    public String sample;
+
+    private byte[] der;
+    private ASN1Object decoded;
+    private Document xml;
+    private String json;
+    private String gser;
+
+    @Setup
+    public void setup() throws IOException, ParserConfigurationException {
+        der = Samples.load(sample);
+        decoded = ASN1Util.toASN1(der);
+        xml = ASN1Util.toXML(decoded);
+        StringWriter out = new StringWriter();
+        ASN1Util.toJSON(decoded, out);
+        json = out.toString();
+        StringBuilder sb = new StringBuilder();
+        ASN1Util.toGSER(decoded, sb);
+        gser = sb.toString();
+    }
+
+    @Benchmark
+    public Document toXML() throws ParserConfigurationException {
+        return ASN1Util.toXML(decoded);
+    }
+
+    @Benchmark
+    public int toXMLStream() throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ASN1Util.toXML(decoded, out);
+        return out.size();
+    }
+
+    /**
+     * 木を作らずに DER から XML へ.
+     * @return 長さ
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    @Benchmark
+    public int derToXMLStream() throws IOException, XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ASN1Util.toXML(new ASN1StreamReader(new ByteArrayInputStream(der)), out);
+        return out.size();
+    }
+
+    @Benchmark
+    public ASN1Object fromXML() {
+        return ASN1Util.toASN1(xml);
+    }
+
+    @Benchmark
+    public byte[] roundTrip() throws ParserConfigurationException {
+        return ASN1Util.toASN1(ASN1Util.toXML(decoded)).encodeAll();
+    }
+
+    @Benchmark
+    public int toJSON() throws IOException {
+        StringWriter out = new StringWriter();
+        ASN1Util.toJSON(decoded, out);
+        return out.getBuffer().length();
+    }
+
+    @Benchmark
+    public int derToJSON() throws IOException {
+        StringWriter out = new StringWriter();
+        ASN1Util.toJSON(new ASN1StreamReader(new ByteArrayInputStream(der)), out);
+        return out.getBuffer().length();
+    }
+
+    @Benchmark
+    public ASN1Object fromJSON() throws IOException {
+        return ASN1Util.fromJSON(new StringReader(json));
+    }
+
+    @Benchmark
+    public int toGSER() throws IOException {
+        StringBuilder out = new StringBuilder();
+        ASN1Util.toGSER(decoded, out);
+        return out.length();
+    }
+
+    @Benchmark
+    public ASN1Object fromGSER() {
+        return ASN1Util.fromGSER(gser);
+    }
+}
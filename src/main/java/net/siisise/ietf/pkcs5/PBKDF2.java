@@ -15,6 +15,11 @@
  */
 package net.siisise.ietf.pkcs5;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 import net.siisise.ietf.PKCS12;
 import net.siisise.io.PacketA;
 import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
@@ -88,6 +93,68 @@ public class PBKDF2 implements PBKDF {
         return dk;
     }
 
+    /**
+     * PBKDF2 ブロック並列版.
+     * ForkJoinPool.commonPool() で計算する.
+     * @param prfs HMACアルゴリズムの生成元 ブロックごとに別のインスタンスを返すこと
+     * @param password HMAC用パスワード
+     * @param salt ソルト
+     * @param c 繰り返す数
+     * @param dkLen 戻り長さ
+     * @return pbkdf2 と同じ値
+     */
+    public static byte[] pbkdf2(Supplier<? extends MAC> prfs, byte[] password, byte[] salt, int c, int dkLen) {
+        return pbkdf2(prfs, password, salt, c, dkLen, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * PBKDF2 ブロック並列版.
+     * 各ブロック T_i は独立しているので別の PRF で同時に計算する.
+     * dkLen がハッシュ長を超えるときだけ効果がある.
+     * @param prfs HMACアルゴリズムの生成元 ブロックごとに別のインスタンスを返すこと
+     * @param password HMAC用パスワード
+     * @param salt ソルト
+     * @param c 繰り返す数
+     * @param dkLen 戻り長さ
+     * @param executor 計算するところ
+     * @return pbkdf2 と同じ値
+     */
+    public static byte[] pbkdf2(Supplier<? extends MAC> prfs, byte[] password, byte[] salt, int c, int dkLen, Executor executor) {
+        MAC prf = prfs.get();
+        int hLen = prf.getMacLength();
+        if ( dkLen > 0xffffffffl * hLen ) {
+            throw new IllegalStateException("derived key too long");
+        }
+        int l = (int)(((long)dkLen + hLen - 1) / hLen);
+        if (l <= 1) {
+            return pbkdf2(prf, password, salt, c, dkLen);
+        }
+        byte[] dk = new byte[dkLen];
+        CompletableFuture<?>[] blocks = new CompletableFuture[l];
+        for (int i = 1; i <= l; i++) {
+            int n = i;
+            MAC p = i == 1 ? prf : prfs.get();
+            blocks[i - 1] = CompletableFuture.runAsync(() -> {
+                p.init(password);
+                byte[] t = f(p, salt, c, n);
+                int off = (n - 1) * hLen;
+                System.arraycopy(t, 0, dk, off, Math.min(hLen, dkLen - off));
+            }, executor);
+        }
+        try {
+            CompletableFuture.allOf(blocks).join();
+        } catch (CompletionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException)t;
+            } else if (t instanceof Error) {
+                throw (Error)t;
+            }
+            throw e;
+        }
+        return dk;
+    }
+
     /**
      * パスワードはHMACで保持できるので省略した
      * @param prf HMAC アルゴリズム パスワード設定済み
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.ietf.pkcs5;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * HMAC 専用 PBKDF2.
+ * RFC 2104 の K xor ipad, K xor opad を通した圧縮関数の状態を先に作っておき、
+ * 繰り返しではその状態に戻して U_j だけを足す.
+ * 1回あたりの圧縮関数は2回で、U_j と F は同じ配列を使い回す.
+ * ハッシュは渡された MessageDigest (の clone) のみを使い、別の実装には差し替えない.
+ * 状態に戻すのは clone なので、1回ごとに2つ複製ができる.
+ * 結果は PBKDF2.pbkdf2 に HMAC を渡したときと同じ.
+ */
+public class PBKDF2HMAC implements PBKDF {
+
+    private final MessageDigest md;
+    private final int blockLength;
+
+    /**
+     * @param md JCA の MessageDigest. clone できること
+     */
+    public PBKDF2HMAC(MessageDigest md) {
+        this(md, blockLength(md.getAlgorithm()));
+    }
+
+    /**
+     * @param md JCA の MessageDigest. clone できること
+     * @param blockLength ハッシュのブロック長 (バイト)
+     */
+    public PBKDF2HMAC(MessageDigest md, int blockLength) {
+        this.md = md;
+        this.blockLength = blockLength;
+    }
+
+    /**
+     * ハッシュのブロック長.
+     * @param alg MessageDigest のアルゴリズム名
+     * @return ブロック長 (バイト)
+     */
+    static int blockLength(String alg) {
+        switch (alg.toUpperCase()) {
+            case "MD2":
+                return 16;
+            case "MD5":
+            case "SHA":
+            case "SHA1":
+            case "SHA-1":
+            case "SHA-224":
+            case "SHA-256":
+                return 64;
+            case "SHA-384":
+            case "SHA-512":
+            case "SHA-512/224":
+            case "SHA-512/256":
+                return 128;
+            case "SHA3-224":
+                return 144;
+            case "SHA3-256":
+                return 136;
+            case "SHA3-384":
+                return 104;
+            case "SHA3-512":
+                return 72;
+            default:
+                throw new IllegalArgumentException("unknown block length " + alg);
+        }
+    }
+
+    @Override
+    public byte[] pbkdf(byte[] password, byte[] salt, int c, int dkLen) {
+        return pbkdf2(md, blockLength, password, salt, c, dkLen);
+    }
+
+    /**
+     * PBKDF2 (HMAC).
+     * @param md ハッシュ. clone できること. 状態は初期化される
+     * @param blockLength ハッシュのブロック長
+     * @param password HMAC用パスワード
+     * @param salt ソルト
+     * @param c 繰り返す数
+     * @param dkLen 戻り長さ
+     * @return DK
+     */
+    public static byte[] pbkdf2(MessageDigest md, int blockLength, byte[] password, byte[] salt, int c, int dkLen) {
+        int hLen = md.getDigestLength();
+        if ( dkLen > 0xffffffffl * hLen ) {
+            throw new IllegalStateException("derived key too long");
+        }
+        md.reset();
+        // K
+        byte[] k = password.length > blockLength ? md.digest(password) : password;
+        byte[] pad = new byte[blockLength];
+        for (int i = 0; i < k.length; i++) {
+            pad[i] = (byte)(k[i] ^ 0x36);
+        }
+        Arrays.fill(pad, k.length, blockLength, (byte)0x36);
+        MessageDigest inner = copy(md);
+        inner.update(pad);
+        for (int i = 0; i < blockLength; i++) {
+            pad[i] ^= 0x36 ^ 0x5c;
+        }
+        MessageDigest outer = copy(md);
+        outer.update(pad);
+        Arrays.fill(pad, (byte)0);
+
+        int l = (int)(((long)dkLen + hLen - 1) / hLen);
+        byte[] dk = new byte[dkLen];
+        byte[] u = new byte[hLen];
+        byte[] f = new byte[hLen];
+        byte[] index = new byte[4];
+        try {
+            for (int i = 1; i <= l; i++) {
+                index[0] = (byte)(i >>> 24);
+                index[1] = (byte)(i >> 16);
+                index[2] = (byte)(i >> 8);
+                index[3] = (byte)i;
+                // U_1
+                MessageDigest h = copy(inner);
+                h.update(salt);
+                h.update(index);
+                h.digest(u, 0, hLen);
+                h = copy(outer);
+                h.update(u);
+                h.digest(u, 0, hLen);
+                System.arraycopy(u, 0, f, 0, hLen);
+                // U_2 .. U_c
+                for (int j = 1; j < c; j++) {
+                    h = copy(inner);
+                    h.update(u);
+                    h.digest(u, 0, hLen);
+                    h = copy(outer);
+                    h.update(u);
+                    h.digest(u, 0, hLen);
+                    for (int n = 0; n < hLen; n++) {
+                        f[n] ^= u[n];
+                    }
+                }
+                int off = (i - 1) * hLen;
+                System.arraycopy(f, 0, dk, off, Math.min(hLen, dkLen - off));
+            }
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        return dk;
+    }
+
+    private static MessageDigest copy(MessageDigest md) {
+        try {
+            return (MessageDigest) md.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new UnsupportedOperationException(md.getAlgorithm() + " not cloneable", e);
+        }
+    }
+}
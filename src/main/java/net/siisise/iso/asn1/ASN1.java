@@ -60,10 +60,12 @@ public enum ASN1 {
     BMPString(0x1e,net.siisise.iso.asn1.tag.ASN1String.class),
     拡張(0x1F,null);
 
+    final int id;
     BigInteger tag;
     Class<? extends ASN1Object> coder;
 
     ASN1(int id, Class<? extends ASN1Object> dc) {
+        this.id = id;
         tag = BigInteger.valueOf(id);
         coder = dc;
     }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 連続した DER または PEM の束をまとめてデコードする.
+ * 先に境界だけ調べて切り分け、ForkJoinPool で並列にデコードする. 結果は入力の順.
+ * DER は最上位の TLV の長さ、PEM は -----BEGIN / -----END の行で切る.
+ */
+class ASN1BulkDecoder {
+
+    private static final byte[] BEGIN = "-----BEGIN ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "-----END ".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * ファイルをメモリマップして読む.
+     * DER の値は複製せずマップした領域を参照することがあるので、結果を持っている間はマップも残る.
+     * @param file DER または PEM
+     * @param pool 並列に使う
+     * @return 入力の順
+     * @throws IOException
+     */
+    static List<ASN1Object> decode(Path file, ForkJoinPool pool) throws IOException {
+        ByteBuffer src;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file too large " + size);
+            }
+            src = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return decode(src, pool);
+    }
+
+    /**
+     * 先頭で DER か PEM かを判定する.
+     * @param src DER または PEM. position, limit の範囲
+     * @param pool 並列に使う
+     * @return 入力の順
+     * @throws IOException
+     */
+    static List<ASN1Object> decode(ByteBuffer src, ForkJoinPool pool) throws IOException {
+        boolean pem = isPEM(src);
+        ByteBuffer[] pieces = pem ? splitPEM(src) : splitDER(src);
+        return new ArrayList<>(Arrays.asList(decode(pieces, pem, pool)));
+    }
+
+    /**
+     * 切り分けたものを並列にデコードする.
+     * ForkJoinPool の中から呼ばれたときはその pool で分ける.
+     * @param pieces DER または BASE64
+     * @param pem BASE64 のとき
+     * @param pool 並列に使う
+     * @return pieces の順
+     * @throws IOException
+     */
+    static ASN1Object[] decode(ByteBuffer[] pieces, boolean pem, ForkJoinPool pool) throws IOException {
+        ASN1Object[] results = new ASN1Object[pieces.length];
+        boolean inPool = ForkJoinTask.inForkJoinPool();
+        int parallelism = (inPool ? ForkJoinTask.getPool() : pool).getParallelism();
+        Task task = new Task(pieces, results, pem, 0, pieces.length, Math.max(1, pieces.length / (parallelism * 4)));
+        try {
+            if (inPool) {
+                task.invoke();
+            } else {
+                pool.invoke(task);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return results;
+    }
+
+    /**
+     * -----BEGIN より前がテキストのみ.
+     * DER は2バイト目までにテキストでない値が出る.
+     */
+    private static boolean isPEM(ByteBuffer src) {
+        int limit = src.limit();
+        for (int p = src.position(); p < limit; p++) {
+            byte b = src.get(p);
+            if (b == '-' && startsWith(src, p, BEGIN)) {
+                return true;
+            } else if ((b < 0x20 && b != '\t' && b != '\r' && b != '\n') || b >= 0x7f) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 最上位の TLV で切る. 値は読まない.
+     * @param src 連続した DER
+     * @return TLV ごとの slice
+     * @throws IOException
+     */
+    static ByteBuffer[] splitDER(ByteBuffer src) throws IOException {
+        List<ByteBuffer> list = new ArrayList<>();
+        ByteBuffer in = src.duplicate();
+        while (in.hasRemaining()) {
+            int start = in.position();
+            ASN1Decoder.skip(in);
+            ByteBuffer piece = in.duplicate();
+            piece.position(start);
+            piece.limit(in.position());
+            list.add(piece.slice());
+        }
+        return list.toArray(new ByteBuffer[list.size()]);
+    }
+
+    /**
+     * -----BEGIN 行の次から -----END 行の前まで. BASE64 の復号はデコードのときに並列でする.
+     * ラベルは見ない.
+     * @param src PEM
+     * @return BASE64 部分の slice
+     * @throws IOException END がない
+     */
+    static ByteBuffer[] splitPEM(ByteBuffer src) throws IOException {
+        List<ByteBuffer> list = new ArrayList<>();
+        int p = src.position();
+        int limit = src.limit();
+        while ((p = indexOf(src, p, limit, BEGIN)) >= 0) {
+            int body = lineEnd(src, p, limit);
+            int end = indexOf(src, body, limit, END);
+            if (end < 0) {
+                throw new IOException("-----END not found");
+            }
+            ByteBuffer piece = src.duplicate();
+            piece.limit(end);
+            piece.position(body);
+            list.add(piece.slice());
+            p = lineEnd(src, end, limit);
+        }
+        return list.toArray(new ByteBuffer[list.size()]);
+    }
+
+    private static int lineEnd(ByteBuffer src, int p, int limit) {
+        while (p < limit && src.get(p) != '\n') {
+            p++;
+        }
+        return Math.min(p + 1, limit);
+    }
+
+    private static int indexOf(ByteBuffer src, int from, int limit, byte[] key) {
+        for (int p = from; p + key.length <= limit; p++) {
+            if (src.get(p) == key[0] && startsWith(src, p, key)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer src, int p, byte[] key) {
+        if (p + key.length > src.limit()) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (src.get(p + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 添字の範囲を半分ずつに分ける
+     */
+    private static class Task extends RecursiveAction {
+
+        private final ByteBuffer[] pieces;
+        private final ASN1Object[] results;
+        private final boolean pem;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        Task(ByteBuffer[] pieces, ASN1Object[] results, boolean pem, int from, int to, int grain) {
+            this.pieces = pieces;
+            this.results = results;
+            this.pem = pem;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > grain) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Task(pieces, results, pem, from, mid, grain),
+                        new Task(pieces, results, pem, mid, to, grain));
+                return;
+            }
+            Base64.Decoder b64 = pem ? Base64.getMimeDecoder() : null;
+            for (int i = from; i < to; i++) {
+                ByteBuffer piece = pem ? b64.decode(pieces[i].duplicate()) : pieces[i].duplicate();
+                try {
+                    results[i] = ASN1Decoder.toASN1(piece);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
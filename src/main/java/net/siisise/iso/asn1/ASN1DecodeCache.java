@@ -0,0 +1,235 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 同じ DER を何度もデコードするときのキャッシュ.
+ * 入力の 64bit ハッシュで引き、バイト列の全比較で確かめる.
+ * 大きさは DER のバイト数で数え、超えたら最近使っていないものから捨てる (LRU).
+ * ロックはハッシュで分けた区画ごと.
+ *
+ * 返す木は共有するので freeze して読み取り専用にしてある.
+ * 入力は複製してから持つので、呼び出し側の配列は変更してもよい.
+ */
+public class ASN1DecodeCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes 持つ DER のバイト数の上限
+     */
+    public ASN1DecodeCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException();
+        }
+        long segmentBytes = Math.max(1, maxBytes / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentBytes);
+        }
+    }
+
+    /**
+     * デコードする. 同じ内容をデコードしたことがあればその木を返す.
+     * @param src DER
+     * @return 共有する ASN.1 Object. freeze 済み
+     * @throws IOException
+     */
+    public ASN1Object decode(byte[] src) throws IOException {
+        long hash = hash(src);
+        Segment segment = segments[(int) (hash >>> 60)];
+        Key key = new Key(hash, src);
+        ASN1Object obj = segment.get(key);
+        if (obj != null) {
+            hits.increment();
+            return obj;
+        }
+        misses.increment();
+        byte[] data = src.clone();
+        obj = ASN1Util.toASN1Shared(data).freeze();
+        return segment.put(new Key(hash, data), obj);
+    }
+
+    /**
+     * すべて捨てる. 統計は残す.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return 持っている数
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return 持っている DER のバイト数
+     */
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ASN1DecodeCache hit:" + hitCount() + " miss:" + missCount() + " eviction:" + evictionCount()
+                + " size:" + size() + " weight:" + weight();
+    }
+
+    /**
+     * MurmurHash3 風の 64bit ハッシュ
+     * @param src バイト列
+     * @return ハッシュ
+     */
+    static long hash(byte[] src) {
+        ByteBuffer in = ByteBuffer.wrap(src).order(ByteOrder.LITTLE_ENDIAN);
+        long h = src.length * 0x9e3779b97f4a7c15L;
+        int i = 0;
+        for (; i + 8 <= src.length; i += 8) {
+            long k = in.getLong(i) * 0x87c37b91114253d5L;
+            k = Long.rotateLeft(k, 31) * 0x4cf5ad432745937fL;
+            h ^= k;
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+        long k = 0;
+        for (int s = 0; i < src.length; i++, s += 8) {
+            k |= (src[i] & 0xffL) << s;
+        }
+        h ^= Long.rotateLeft(k * 0x87c37b91114253d5L, 31) * 0x4cf5ad432745937fL;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class Key {
+
+        private final long hash;
+        private final byte[] data;
+
+        Key(long hash, byte[] data) {
+            this.hash = hash;
+            this.data = data;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return hash == k.hash && Arrays.equals(data, k.data);
+        }
+    }
+
+    /**
+     * 区画. LinkedHashMap のアクセス順で LRU にする
+     */
+    private class Segment {
+
+        private final long maxBytes;
+        private final LinkedHashMap<Key, ASN1Object> map = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized ASN1Object get(Key key) {
+            return map.get(key);
+        }
+
+        /**
+         * 追加する. 先に入っていたらそちらを返す.
+         */
+        synchronized ASN1Object put(Key key, ASN1Object obj) {
+            int len = key.data.length;
+            if (len > maxBytes) {
+                return obj;
+            }
+            ASN1Object old = map.putIfAbsent(key, obj);
+            if (old != null) {
+                return old;
+            }
+            bytes += len;
+            Iterator<Map.Entry<Key, ASN1Object>> it = map.entrySet().iterator();
+            while (bytes > maxBytes) {
+                Key eldest = it.next().getKey();
+                it.remove();
+                bytes -= eldest.data.length;
+                evictions.increment();
+            }
+            return obj;
+        }
+
+        synchronized void clear() {
+            map.clear();
+            bytes = 0;
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        synchronized long weight() {
+            return bytes;
+        }
+    }
+}
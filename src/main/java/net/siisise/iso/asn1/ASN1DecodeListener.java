@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.PrintStream;
+import java.math.BigInteger;
+import net.siisise.iso.asn1.tag.ASN1String;
+
+/**
+ * デコード時の診断用.
+ * ASN1Decoder.setListener で登録したときだけ呼ばれる.
+ * 未登録のときは文字列も作らない.
+ */
+public interface ASN1DecodeListener {
+
+    /**
+     * TLV のタグと長さを読んだところ
+     * @param cls クラス
+     * @param struct 構造化フラグ
+     * @param tag タグ番号 63bitを超えるときは-1
+     * @param bigTag 63bitを超えるタグ番号 通常はnull
+     * @param length 値の長さ -1は可変長
+     */
+    default void tag(ASN1Cls cls, boolean struct, long tag, BigInteger bigTag, int length) {
+    }
+
+    /**
+     * 終端 (EndOfContent)
+     */
+    default void endOfContents() {
+    }
+
+    /**
+     * デコードできない型. このあと例外になる
+     * @param cls クラス
+     * @param struct 構造化フラグ
+     * @param tag タグ番号 63bitを超えるときは-1
+     * @param bigTag 63bitを超えるタグ番号 通常はnull
+     * @param length 値の長さ
+     */
+    default void unsupported(ASN1Cls cls, boolean struct, long tag, BigInteger bigTag, int length) {
+    }
+
+    /**
+     * 値をデコードしたあと
+     * @param obj デコードしたもの
+     */
+    default void decoded(ASN1Object obj) {
+    }
+
+    /**
+     * 以前 System.out に出していたものと同じ程度の表示.
+     * @param out 出力先
+     * @return 表示するもの
+     */
+    static ASN1DecodeListener print(PrintStream out) {
+        return new ASN1DecodeListener() {
+            @Override
+            public void tag(ASN1Cls cls, boolean struct, long tag, BigInteger bigTag, int length) {
+                if (cls == ASN1Cls.汎用) {
+                    return;
+                }
+                String t = bigTag == null ? Long.toString(tag) : bigTag.toString();
+                out.println("クラス" + cls.cls + ":" + cls + " tag=" + t + " 構造:" + struct + " len:" + length);
+            }
+
+            @Override
+            public void endOfContents() {
+                out.println("終端");
+            }
+
+            @Override
+            public void unsupported(ASN1Cls cls, boolean struct, long tag, BigInteger bigTag, int length) {
+                String t = bigTag == null ? Long.toHexString(tag) : bigTag.toString(16);
+                out.println("そのた 0x" + cls + ":" + struct + " tag:" + t + " len:" + length);
+            }
+
+            @Override
+            public void decoded(ASN1Object obj) {
+                if (obj instanceof ASN1String) {
+                    out.println(" " + obj);
+                }
+            }
+        };
+    }
+}
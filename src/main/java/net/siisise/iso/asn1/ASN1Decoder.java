@@ -16,8 +16,9 @@
 package net.siisise.iso.asn1;
 
 import java.io.*;
-import java.lang.reflect.Constructor;
 import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -57,6 +58,16 @@ public class ASN1Decoder {
 
     EncodeType encode = EncodeType.DER;
 
+    /**
+     * 診断用 通常はnull
+     */
+    private static volatile ASN1DecodeListener listener;
+
+    /**
+     * 構造の値がこれ以上のとき子を並列にデコードする. バイト数
+     */
+    private static volatile int parallelThreshold = 1 << 20;
+
     /**
      * map にしたい X.690
      */
@@ -106,57 +117,172 @@ public class ASN1Decoder {
      */
     public static ASN1Object toASN1(InputStream in) throws IOException {
         int code = in.read();
+        if (code < 0) {
+            throw new EOFException();
+        }
         ASN1Cls cl = ASN1Cls.valueOf((code >> 6) & 0x03); // 上位2bit
         boolean struct = (code & 0x20) != 0; // 構造化フラグ
-        BigInteger tag = readTag(code, in);
-        
-        switch (cl) {
-            case 汎用:
-            //    System.out.print("クラス0:汎用 " + Integer.toHexString(code));
-                break;
-            case 応用:
-                System.out.print("クラス1:応用");
-                break;
-            case コンテキスト特定:
-                System.out.print("クラス2:コンテキスト特定" + (code & 0x1f));
-                break; // タグ番号
-            case プライベート:
-                System.out.print("クラス3:プライベート");
-                break;
-        }
-        if ( cl != ASN1Cls.汎用) {
-            System.out.print("data=0x" + Integer.toHexString(code) + " tag=0x" + tag.toString(16) + " ");
+        long tag = code & 0x1f;
+        BigInteger bigTag = null;
+        if (tag == 0x1f) { // 拡張
+            tag = 0;
+            int d;
+            do {
+                d = in.read();
+                if (d < 0) {
+                    throw new EOFException();
+                }
+                if ((tag >>> 56) != 0) { // 63bitを超える
+                    bigTag = readBigTag(tag, d, in);
+                    tag = -1;
+                    break;
+                }
+                tag = (tag << 7) | (d & 0x7f);
+            } while ((d & 0x80) != 0);
         }
-//        System.out.print(" 構造:" + struct);
-        
 
         int inlen = len(in);
+        ASN1DecodeListener l = listener;
+        if (l != null) {
+            l.tag(cl, struct, tag, bigTag, inlen);
+        }
         if (inlen < 0 ) {
             throw new java.lang.UnsupportedOperationException();
         }
         if (code == 0 && inlen == 0) { // 終端コード
-//            System.out.println("しゅうたんA");
-            System.out.println();
+            if (l != null) {
+                l.endOfContents();
+            }
             return null;
         }
 //        System.out.println(" LEN:"+inlen);
-        return decode(cl, struct, tag, in, inlen);
+        return decode(cl, struct, tag, bigTag, in, inlen);
     }
 
-    static BigInteger readTag(int code, InputStream in) throws IOException {
-        BigInteger tag;
-        if ((code & 0x1f) != 0x1f) {
-            tag = BigInteger.valueOf(code & 0x1f);
-        } else {
-            tag = BigInteger.ZERO;
+    /**
+     * ByteBuffer からのデコーダ.
+     * プリミティブの値は複製せず in の一部 (slice) を参照することがある.
+     * in の position はデコードした分進む.
+     * @param in heap, direct, mapped どれでも
+     * @return 某長さを指定しない終端のときはnull
+     * @throws IOException
+     */
+    public static ASN1Object toASN1(ByteBuffer in) throws IOException {
+        return toASN1(in, false);
+    }
+
+    /**
+     * ByteBuffer からのデコーダ.
+     * lazy のときは構造の子の位置だけ調べておき、get などで参照したときにデコードする.
+     * 参照していない子は再エンコードで元のバイト列をそのまま使う.
+     * @param in heap, direct, mapped どれでも
+     * @param lazy 遅延デコード
+     * @return 某長さを指定しない終端のときはnull
+     * @throws IOException
+     */
+    public static ASN1Object toASN1(ByteBuffer in, boolean lazy) throws IOException {
+        try {
+            return decodeTLV(in, lazy);
+        } catch (BufferUnderflowException e) {
+            throw eof(e);
+        }
+    }
+
+    private static ASN1Object decodeTLV(ByteBuffer in, boolean lazy) throws IOException {
+        int code = in.get() & 0xff;
+        ASN1Cls cl = ASN1Cls.valueOf((code >> 6) & 0x03); // 上位2bit
+        boolean struct = (code & 0x20) != 0; // 構造化フラグ
+        long tag = code & 0x1f;
+        BigInteger bigTag = null;
+        if (tag == 0x1f) { // 拡張
+            tag = 0;
             int d;
             do {
-                d = in.read();
-                tag = tag.shiftLeft(7);
-                tag = tag.or(BigInteger.valueOf(d & 0x7f));
+                d = in.get();
+                if ((tag >>> 56) != 0) { // 63bitを超える
+                    bigTag = readBigTag(tag, d, in);
+                    tag = -1;
+                    break;
+                }
+                tag = (tag << 7) | (d & 0x7f);
             } while ((d & 0x80) != 0);
         }
-        return tag;
+
+        int inlen = len(in);
+        ASN1DecodeListener l = listener;
+        if (l != null) {
+            l.tag(cl, struct, tag, bigTag, inlen);
+        }
+        if (inlen < 0 ) {
+            throw new java.lang.UnsupportedOperationException();
+        }
+        if (code == 0 && inlen == 0) { // 終端コード
+            if (l != null) {
+                l.endOfContents();
+            }
+            return null;
+        }
+        return decode(cl, struct, tag, bigTag, in, inlen, lazy);
+    }
+
+    /**
+     * 診断用の通知先を登録する.
+     * @param l 通知先 null で解除
+     */
+    public static void setListener(ASN1DecodeListener l) {
+        listener = l;
+    }
+
+    /**
+     * 構造の子を並列にデコードする大きさ.
+     * ByteBuffer からのデコードで、値の長さがこれ以上の構造は子の境界を先に調べて
+     * ForkJoinPool.commonPool で並列にデコードする. 子の順は変わらない.
+     * 巨大な CRL の revokedCertificates など.
+     * listener を登録しているときは並列にしない.
+     * @param bytes 値のバイト数. Integer.MAX_VALUE で並列にしない
+     */
+    public static void setParallelThreshold(int bytes) {
+        parallelThreshold = bytes;
+    }
+
+    public static int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * 並列にデコードするか
+     * @param length 構造の値の長さ
+     */
+    static boolean parallel(int length) {
+        return length >= parallelThreshold && listener == null;
+    }
+
+    /**
+     * 63bitを超える拡張タグ番号の続きを読む.
+     * @param tag 読んだところまで
+     * @param d 未処理の1バイト
+     */
+    static BigInteger readBigTag(long tag, int d, InputStream in) throws IOException {
+        BigInteger big = BigInteger.valueOf(tag);
+        big = big.shiftLeft(7).or(BigInteger.valueOf(d & 0x7f));
+        while ((d & 0x80) != 0) {
+            d = in.read();
+            if (d < 0) {
+                throw new EOFException();
+            }
+            big = big.shiftLeft(7).or(BigInteger.valueOf(d & 0x7f));
+        }
+        return big;
+    }
+
+    static BigInteger readBigTag(long tag, int d, ByteBuffer in) {
+        BigInteger big = BigInteger.valueOf(tag);
+        big = big.shiftLeft(7).or(BigInteger.valueOf(d & 0x7f));
+        while ((d & 0x80) != 0) {
+            d = in.get();
+            big = big.shiftLeft(7).or(BigInteger.valueOf(d & 0x7f));
+        }
+        return big;
     }
 
     /**
@@ -167,22 +293,107 @@ public class ASN1Decoder {
     static int len(InputStream in) throws IOException {
         int len;
         len = in.read();
+        if (len < 0) {
+            throw new EOFException();
+        }
         if (len >= 128) {
             int len2 = len & 0x7f;
             if (len == 128 && len2 == 0) {
                 //     System.out.println("可変長");
                 return -1;
             }
+            checkLengthOctets(len2);
             len = 0;
             for (int cnt = 0; cnt < len2; cnt++) {
+                int d = in.read();
+                if (d < 0) {
+                    throw new EOFException();
+                }
                 len <<= 8;
-                len += in.read();
+                len += d;
                 //     length++;
             }
+            checkLength(len);
+        }
+        return len;
+    }
+
+    /**
+     * 長さフィールドの読み取り
+     *
+     * @return -1は可変長
+     */
+    static int len(ByteBuffer in) throws IOException {
+        int len = in.get() & 0xff;
+        if (len >= 128) {
+            int len2 = len & 0x7f;
+            if (len2 == 0) {
+                return -1;
+            }
+            checkLengthOctets(len2);
+            len = 0;
+            for (int cnt = 0; cnt < len2; cnt++) {
+                len <<= 8;
+                len += in.get() & 0xff;
+            }
+            checkLength(len);
         }
         return len;
     }
 
+    /**
+     * int で表せない長さは扱わない.
+     * @param len2 長さのバイト数
+     */
+    private static void checkLengthOctets(int len2) throws IOException {
+        if (len2 > 4) {
+            throw new IOException("length of length " + len2 + " too long");
+        }
+    }
+
+    private static void checkLength(int len) throws IOException {
+        if (len < 0) {
+            throw new IOException("length " + (len & 0xffffffffL) + " too long");
+        }
+    }
+
+    /**
+     * 途中で切れた TLV
+     */
+    private static EOFException eof(BufferUnderflowException e) {
+        EOFException eof = new EOFException("truncated TLV");
+        eof.initCause(e);
+        return eof;
+    }
+
+    /**
+     * TLV 1つ分を読み飛ばす. 値はデコードしない.
+     * @param in TLV の先頭. 次の TLV の先頭まで進む
+     * @throws IOException
+     */
+    static void skip(ByteBuffer in) throws IOException {
+        int length;
+        try {
+            int code = in.get() & 0xff;
+            if ((code & 0x1f) == 0x1f) {
+                int d;
+                do {
+                    d = in.get();
+                } while ((d & 0x80) != 0);
+            }
+            length = len(in);
+        } catch (BufferUnderflowException e) {
+            throw eof(e);
+        }
+        if (length < 0) {
+            throw new java.lang.UnsupportedOperationException();
+        }
+        if (length > in.remaining()) {
+            throw new EOFException();
+        }
+        in.position(in.position() + length);
+    }
+
     /**
      * バイナリからObject に
      *
@@ -190,23 +401,69 @@ public class ASN1Decoder {
      * 10:Context-specific(コンテキスト特定) 11:Private(プライベート)
      * @param struct 構造化フラグ
      * @param tag タグ番号
+     * @param bigTag 63bitを超えるタグ番号 通常はnull
      */
-    static ASN1Object decode(ASN1Cls cl, boolean struct, BigInteger tag, InputStream in, int length) throws IOException {
+    static ASN1Object decode(ASN1Cls cl, boolean struct, long tag, BigInteger bigTag, InputStream in, int length) throws IOException {
+        ASN1Object object = newObject(cl, struct, tag, bigTag, length);
+        object.decodeBody(in, length);
+        ASN1DecodeListener l = listener;
+        if (l != null) {
+            l.decoded(object);
+        }
+        return object;
+    }
+
+    /**
+     * バイナリからObject に.
+     * 値は in の slice として渡す.
+     *
+     * @param cl クラス
+     * @param struct 構造化フラグ
+     * @param tag タグ番号
+     * @param bigTag 63bitを超えるタグ番号 通常はnull
+     * @param in 値の先頭
+     * @param length 値の長さ
+     * @param lazy 構造の遅延デコード
+     */
+    static ASN1Object decode(ASN1Cls cl, boolean struct, long tag, BigInteger bigTag, ByteBuffer in, int length, boolean lazy) throws IOException {
+        if (length > in.remaining()) {
+            throw new EOFException();
+        }
+        ASN1Object object = newObject(cl, struct, tag, bigTag, length);
+        ByteBuffer body = in.slice();
+        body.limit(length);
+        in.position(in.position() + length);
+        if (lazy && object instanceof ASN1Struct) {
+            ((ASN1Struct) object).decodeLazy(body);
+        } else {
+            object.decodeBody(body);
+        }
+        ASN1DecodeListener l = listener;
+        if (l != null) {
+            l.decoded(object);
+        }
+        return object;
+    }
+
+    /**
+     * 型に合わせた空のObject
+     */
+    static ASN1Object newObject(ASN1Cls cl, boolean struct, long tag, BigInteger bigTag, int length) {
         ASN1Object object;
         switch (cl) {
             case 汎用:
                 if (struct) {
                 //    System.out.println("構造" + cl + tag);
-                    object = new ASN1Struct(cl, tag);
+                    object = bigTag == null ? new ASN1Struct(cl, tag) : new ASN1Struct(cl, bigTag);
                 } else {
 //                    System.out.println("cl" + cl + "たぐs" + tag);
                     object = decodeTag(tag);
                     //    System.out.println("たぐe" + tag);
                 }
                 if (object == null) {
-                    System.out.println("そのた 0x" + cl + ":" + struct + " tag:" + tag.toString(16) + " len:" + length);
-                    if (length > 0) {
-                        System.out.println("謎 0x");
+                    ASN1DecodeListener l = listener;
+                    if (l != null) {
+                        l.unsupported(cl, struct, tag, bigTag, length);
                     }
                     throw new UnsupportedOperationException("unsupported encoding yet.");
                 }
@@ -214,7 +471,6 @@ public class ASN1Decoder {
             case コンテキスト特定:
             case 応用:
             case プライベート:
-                System.out.println(" 目印 " + tag);
                 /*
              * if (inlen > 0) { tmp = new byte[inlen]; in.read(tmp); if (tmp[0]
              * == 0x30 || (code & 0x20) != 0) { ASN1 asn = new ASN1();
@@ -222,7 +478,7 @@ public class ASN1Decoder {
              *
                  */
                 if (struct) {
-                    object = new ASN1Struct(cl, tag);
+                    object = bigTag == null ? new ASN1Struct(cl, tag) : new ASN1Struct(cl, bigTag);
                     break;
                 } else {
                     object = new OCTETSTRING(); // 仮
@@ -232,56 +488,18 @@ public class ASN1Decoder {
             default:
                 throw new java.lang.UnsupportedOperationException("unsupported encoding yet.");
         }
-        object.decodeBody(in, length);
         return object;
-
     }
 
     /**
      * タグをコードから分解
      *
-     * @param tag
-     * @return
+     * @param tag 汎用クラスのタグ番号 63bitを超えるものは-1
+     * @return 未対応のときは null
+     * @see ASN1Factory
      */
-    static ASN1Object decodeTag(BigInteger tag) {
-        int tagid = tag.intValue();
-    //    if ( tagid == 12) {
-    //        System.err.println("ないもの" + tagid);
-    //    }
-            
-        ASN1 tagAndClass = ASN1.valueOf(tagid);
-    //    if ( tagAndClass == null) {
-    //        System.err.println("ないもの" + tagid);
-    //    }
-        ASN1Object object;
-        Class<? extends ASN1Object> decodeClass;
-
-//        if (DECODE_CLASSES.length > tagAndClass.tag.longValue()
-//               && (decodeClass = DECODE_CLASSES[tagAndClass.tag.intValue()]) != null) {
-        if (ASN1.values().length > tagAndClass.tag.longValue()
-                && (decodeClass = ASN1.valueOf(tagAndClass.tag.intValue()).coder) != null) {
-            /*
-             case OBJECTIDENTIFIER: // 0x06
-             Class<? extends ASN1Object> cl;
-             cl = (Class<ASN1Object>) java.lang.Class.forName("net.siisise.iso.asn1.tag." + tagAndClass.toString());
-             object = cl.getConstructor().newInstance();
-             break;
-             */
-            try {
-                try {
-                    Constructor<? extends ASN1Object> cnst = decodeClass.getConstructor();
-                    object = cnst.newInstance();
-                } catch (NoSuchMethodException e) {
-                    object = decodeClass.getConstructor(ASN1.class).newInstance(tagAndClass);
-                }
-            } catch (ReflectiveOperationException | IllegalArgumentException | SecurityException ex) {
-                Logger.getLogger(ASN1Decoder.class.getName()).log(Level.SEVERE, null, ex);
-                object = null;
-            }
-            return object;
-        } else {
-            return null;
-        }
+    static ASN1Object decodeTag(long tag) {
+        return ASN1Factory.create(tag);
     }
 
     /**
@@ -293,6 +511,7 @@ public class ASN1Decoder {
 
     // http://www.trustss.co.jp/smnDataFormat430.html
     public static void main(String[] argv) {
+        setListener(ASN1DecodeListener.print(System.out));
         try {
             Map<String,Object> src = PEM.load("CERTIFICATE", "example.pem");
             byte[] result;
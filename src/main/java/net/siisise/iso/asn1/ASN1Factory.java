@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+import net.siisise.iso.asn1.tag.ASN1String;
+import net.siisise.iso.asn1.tag.BITSTRING;
+import net.siisise.iso.asn1.tag.BOOLEAN;
+import net.siisise.iso.asn1.tag.INTEGER;
+import net.siisise.iso.asn1.tag.NULL;
+import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
+import net.siisise.iso.asn1.tag.OCTETSTRING;
+import net.siisise.iso.asn1.tag.SEQUENCE;
+
+/**
+ * 汎用クラスのタグ番号から空の Object を作る表.
+ * ASN1Decoder と ASN1Util (XML) の両方から使う.
+ * 独自の型は register で追加/置き換えできる.
+ */
+public class ASN1Factory {
+
+    /**
+     * 短形式 (0x00 - 0x1e) のタグ
+     */
+    private static final AtomicReferenceArray<IntFunction<? extends ASN1Object>> TAGS = new AtomicReferenceArray<>(ASN1.values().length);
+    /**
+     * 0x1f 以上の拡張タグ
+     */
+    private static final Map<Integer, IntFunction<? extends ASN1Object>> EXT_TAGS = new ConcurrentHashMap<>();
+
+    static {
+        register(ASN1.EndOfContent, id -> new NULL(ASN1.EndOfContent));
+        register(ASN1.BOOLEAN, id -> new BOOLEAN());
+        register(ASN1.INTEGER, id -> new INTEGER());
+        register(ASN1.BITSTRING, id -> new BITSTRING());
+        register(ASN1.OCTETSTRING, id -> new OCTETSTRING());
+        register(ASN1.NULL, id -> new NULL());
+        register(ASN1.OBJECTIDENTIFIER, id -> new OBJECTIDENTIFIER());
+        register(ASN1.SEQUENCE, id -> new SEQUENCE());
+        register(ASN1.SET, id -> new SEQUENCE(ASN1.SET));
+        IntFunction<ASN1String> str = id -> new ASN1String(ASN1.valueOf(id));
+        register(ASN1.UTF8String, str);
+        register(ASN1.PrintableString, str);
+        register(ASN1.TeletexString, str);
+        register(ASN1.IA5String, str);
+        register(ASN1.UTCTime, str);
+        register(ASN1.BMPString, str);
+    }
+
+    private ASN1Factory() {
+    }
+
+    public static void register(ASN1 tag, IntFunction<? extends ASN1Object> factory) {
+        register(tag.id, factory);
+    }
+
+    /**
+     * 汎用クラスの型を追加する.
+     * @param tag タグ番号
+     * @param factory タグ番号から空の Object を作るもの. null で削除
+     */
+    public static void register(int tag, IntFunction<? extends ASN1Object> factory) {
+        if (tag < 0) {
+            throw new IllegalArgumentException();
+        } else if (tag < TAGS.length() - 1) {
+            TAGS.set(tag, factory);
+        } else if (factory == null) {
+            EXT_TAGS.remove(tag);
+        } else {
+            EXT_TAGS.put(tag, factory);
+        }
+    }
+
+    /**
+     * 空の Object を作る.
+     * @param tag 汎用クラスのタグ番号
+     * @return 未登録のときは null
+     */
+    public static ASN1Object create(long tag) {
+        IntFunction<? extends ASN1Object> factory;
+        if (tag < 0 || tag > Integer.MAX_VALUE) {
+            return null;
+        } else if (tag < TAGS.length() - 1) {
+            factory = TAGS.get((int) tag);
+        } else {
+            factory = EXT_TAGS.get((int) tag);
+        }
+        return factory == null ? null : factory.apply((int) tag);
+    }
+}
@@ -15,10 +15,15 @@
  */
 package net.siisise.iso.asn1;
 
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -30,9 +35,24 @@ import org.w3c.dom.Element;
 public abstract class ASN1Object<T> implements java.lang.Comparable<ASN1Object> {
 
     private ASN1Cls asn1class = ASN1Cls.汎用;
-    private BigInteger tag;
+    /**
+     * タグ番号. 未設定または63bitを超えるときは -1
+     */
+    private long tag = -1;
+    /**
+     * 63bitを超えるタグ番号のときのみ使う
+     */
+    private BigInteger bigTag;
     /** 可変長形式 */
     protected boolean inefinite = false;
+    /**
+     * encodedLength で求めた値の長さ
+     */
+    private int encodedBodyLength;
+    /**
+     * freeze 後は変更しない
+     */
+    private boolean frozen;
 
     protected ASN1Object() {
         asn1class = ASN1Cls.汎用;
@@ -45,17 +65,35 @@ public abstract class ASN1Object<T> implements java.lang.Comparable<ASN1Object>
      */
     protected ASN1Object( byte cls, BigInteger tag ) {
         asn1class = ASN1Cls.valueOf(cls);
-        this.tag = tag;
+        setTag(tag);
     }
 
     protected ASN1Object( ASN1Cls cls, BigInteger tag ) {
+        asn1class = cls;
+        setTag(tag);
+    }
+
+    /**
+     * 拡張
+     * @param cls
+     * @param tag 0以上
+     */
+    protected ASN1Object( ASN1Cls cls, long tag ) {
         asn1class = cls;
         this.tag = tag;
     }
 
     protected ASN1Object( ASN1 tag ) {
         asn1class = ASN1Cls.汎用;
-        this.tag = tag.tag;
+        this.tag = tag.id;
+    }
+
+    private void setTag( BigInteger tag ) {
+        if ( tag.signum() >= 0 && tag.bitLength() < 64 ) {
+            this.tag = tag.longValue();
+        } else {
+            bigTag = tag;
+        }
     }
 
     public int getASN1Class() {
@@ -74,12 +112,67 @@ public abstract class ASN1Object<T> implements java.lang.Comparable<ASN1Object>
     abstract public void setValue(T val);
 
     /**
-     * ヘッダ書き込みで前後するのであまり使えない
+     * 符号化したときの全長.
+     * 値の長さは書き込み用に保持する. 構造の場合は子の長さも求めて保持する.
+     * @return タグ、長さ、値の合計
+     */
+    public int encodedLength() {
+        int len;
+        if ( frozen ) { // freeze で求めてある
+            len = encodedBodyLength;
+        } else {
+            len = bodyLength();
+            encodedBodyLength = len;
+        }
+        return tagLength() + lengthLength(len) + len + (inefinite ? 2 : 0);
+    }
+
+    /**
+     * 読み取り専用にする.
+     * 長さなど符号化に使う値を先に求めておき、以後は変更しない.
+     * 変更するメソッドは UnsupportedOperationException になる.
+     * 複数のスレッドで共有する場合は共有する前に呼ぶこと. 以後はロックなしで読み、符号化できる.
+     * @return this
+     */
+    public ASN1Object<T> freeze() {
+        if ( !frozen ) {
+            encodedLength();
+            frozen = true;
+        }
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * 変更する前に呼ぶ
+     * @throws UnsupportedOperationException freeze 済み
+     */
+    protected void checkFrozen() {
+        if ( frozen ) {
+            throw new UnsupportedOperationException("frozen");
+        }
+    }
+
+    /**
+     * 値の長さ.
+     * 多くの型は encodeBody() より軽く求められるので上書きするとよい
+     * @return 値のバイト長
+     */
+    protected int bodyLength() {
+        return encodeBody().length;
+    }
+
+    /**
+     * 長さを先に求めてからそのまま書き出す
      * @param out
      * @throws java.io.IOException
      */
     public void encodeAll( OutputStream out ) throws IOException {
-        out.write(encodeAll());
+        encodedLength();
+        writeAll(out);
     }
 
     /**
@@ -87,42 +180,138 @@ public abstract class ASN1Object<T> implements java.lang.Comparable<ASN1Object>
      * @return 
      */
     public byte[] encodeAll() {
-        byte[] tagNo = encodeTagNo();
+        byte[] encoded = new byte[encodedLength()];
+        writeAll(encoded, 0);
+        return encoded;
+    }
 
-//        System.out.println("" + getTag() + " {");
-        byte[] body = encodeBody();
-//        System.out.print(" }");
-
-        byte[] lengthField = encodeLength(body.length);
-        byte[] encoded = new byte[tagNo.length + lengthField.length + body.length + (inefinite ? 2 : 0)];
-        System.arraycopy(tagNo, 0, encoded, 0, tagNo.length);
-        System.arraycopy(lengthField, 0, encoded, tagNo.length, lengthField.length);
-        System.arraycopy(body, 0, encoded, tagNo.length + lengthField.length, body.length);
-//        System.out.println(" tagNolen " + tagNo.length + "lengf " + lengthField.length + "body " + body.length);
+    /**
+     * 用意された配列に書き込む.
+     * @param dst 出力先
+     * @param offset 位置
+     * @return 書き込んだ次の位置
+     */
+    public int encodeAll( byte[] dst, int offset ) {
+        int len = encodedLength();
+        if ( offset < 0 || dst.length - offset < len ) {
+            throw new IndexOutOfBoundsException();
+        }
+        return writeAll(dst, offset);
+    }
+
+    /**
+     * 用意された ByteBuffer に書き込む.
+     * position は書き込んだ分進む.
+     * @param dst 出力先
+     */
+    public void encodeAll( ByteBuffer dst ) {
+        int len = encodedLength();
+        if ( dst.remaining() < len ) {
+            throw new BufferOverflowException();
+        }
+        if ( dst.hasArray() ) {
+            int offset = dst.arrayOffset() + dst.position();
+            writeAll(dst.array(), offset);
+            dst.position(dst.position() + len);
+        } else {
+            try {
+                writeAll(new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                        dst.put((byte) b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        dst.put(b, off, len);
+                    }
+                });
+            } catch ( IOException ex ) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /**
+     * encodedLength で求めた長さを使って書き込む.
+     * @param dst 出力先
+     * @param offset 位置
+     * @return 書き込んだ次の位置
+     */
+    int writeAll( byte[] dst, int offset ) {
+        offset = writeTagNo(dst, offset);
+        offset = writeLength(dst, offset, encodedBodyLength);
+        offset = encodeBody(dst, offset);
         if ( inefinite ) {
-            System.arraycopy( EO, 0, encoded, tagNo.length + lengthField.length + body.length, EO.length );
+            dst[offset++] = 0;
+            dst[offset++] = 0;
         }
-        return encoded;
+        return offset;
     }
 
-    private byte[] encodeTagNo() {
-        BigInteger tagId = getTag();
-        byte[] tagNo;
-        int bitLen = tagId.bitLength();
+    void writeAll( OutputStream out ) throws IOException {
+        writeHeader(out, encodedBodyLength);
+        encodeBody(out);
+        if ( inefinite ) {
+            out.write(0);
+            out.write(0);
+        }
+    }
 
-        if ( bitLen <= 5 ) {
-            tagNo = new byte[1];
-            tagNo[0] = (byte) ((getASN1Class() << 6) | (isStruct() ? 0x20 : 0) | tagId.intValue());
+    /**
+     * 値を別に書くときのタグと長さの長さ.
+     * @param bodyLength 値の長さ
+     * @return タグと長さのバイト数
+     */
+    int headerLength( int bodyLength ) {
+        return tagLength() + lengthLength(bodyLength);
+    }
+
+    /**
+     * タグと長さのみ書く.
+     * 可変長のときは終端は書かない
+     * @param out 出力先
+     * @param bodyLength 値の長さ
+     * @throws IOException
+     */
+    void writeHeader( OutputStream out, int bodyLength ) throws IOException {
+        byte[] head = new byte[tagLength() + 5];
+        int len = writeTagNo(head, 0);
+        len = writeLength(head, len, bodyLength);
+        out.write(head, 0, len);
+    }
+
+    private int tagLength() {
+        long tagId = getTagNo();
+        if ( tagId >= 0 && tagId < 0x1f ) {
+            return 1;
+        } else if ( tagId >= 0 ) {
+            return 1 + (64 - Long.numberOfLeadingZeros(tagId) + 6) / 7;
+        }
+        return 1 + (getTag().bitLength() + 6) / 7;
+    }
+
+    private int writeTagNo( byte[] dst, int offset ) {
+        int head = (getASN1Class() << 6) | (isStruct() ? 0x20 : 0);
+        long tagId = getTagNo();
+
+        if ( tagId >= 0 && tagId < 0x1f ) {
+            dst[offset++] = (byte) (head | tagId);
+        } else if ( tagId >= 0 ) {
+            int len = (64 - Long.numberOfLeadingZeros(tagId) + 6) / 7;
+            dst[offset++] = (byte) (head | 0x1f);
+            for ( int i = 0; i < len; i++ ) {
+                dst[offset++] = (byte) (((i < len - 1) ? 0x80 : 0) | (tagId >>> ((len - i - 1) * 7)) & 0x7f);
+            }
         } else {
-            int len = (bitLen + 6) / 7;
-            tagNo = new byte[len + 1];
-            BigInteger t = tagId;
+            BigInteger t = getTag();
+            int len = (t.bitLength() + 6) / 7;
+            dst[offset++] = (byte) (head | 0x1f);
             for ( int i = 0; i < len; i++ ) {
-                tagNo[i + 1] = (byte) (((i == len - 1) ? 0x80 : 0) | t.shiftRight((len - i - 1) * 7).intValue() & 0x7f);
+                dst[offset++] = (byte) (((i < len - 1) ? 0x80 : 0) | t.shiftRight((len - i - 1) * 7).intValue() & 0x7f);
             }
-            tagNo[0] = (byte) ((getASN1Class() << 6) | (isStruct() ? 0x20 : 0) | 0x1f);
         }
-        return tagNo;
+        return offset;
     }
 
     /**
@@ -130,48 +319,52 @@ public abstract class ASN1Object<T> implements java.lang.Comparable<ASN1Object>
      * @return 
      */
     public abstract byte[] encodeBody();
-    
-    static final byte[] INFLEN = {(byte)0x80};
-    static final byte[] EO = {0,0};
 
-    private byte[] encodeLength( int len ) {
-        byte[] lengthField;
-        if ( inefinite ) {
-            return INFLEN;
-        }
-        if ( len < 0x80 ) {
-            lengthField = new byte[1];
-            lengthField[0] = (byte) (len & 0x7f);
+    /**
+     * 値を dst に書く.
+     * 長さは bodyLength() と同じであること
+     * @param dst 出力先
+     * @param offset 位置
+     * @return 書き込んだ次の位置
+     */
+    protected int encodeBody( byte[] dst, int offset ) {
+        byte[] body = encodeBody();
+        System.arraycopy(body, 0, dst, offset, body.length);
+        return offset + body.length;
+    }
+
+    protected void encodeBody( OutputStream out ) throws IOException {
+        out.write(encodeBody());
+    }
+
+    private int lengthLength( int len ) {
+        if ( inefinite || len < 0x80 ) {
+            return 1;
         } else if ( len < 0x100 ) {
-            lengthField = new byte[2];
-            lengthField[0] = (byte) 0x81;
-            lengthField[1] = (byte) (len & 0xff);
+            return 2;
         } else if ( len < 0x10000 ) {
-            lengthField = new byte[3];
-            lengthField[0] = (byte) 0x82;
-            lengthField[2] = (byte) (len & 0xff);
-            len >>= 8;
-            lengthField[1] = (byte) (len & 0xff);
+            return 3;
         } else if ( len < 0x1000000 ) {
-            lengthField = new byte[4];
-            lengthField[0] = (byte) 0x83;
-            lengthField[3] = (byte) (len & 0xff);
-            len >>= 8;
-            lengthField[2] = (byte) (len & 0xff);
-            len >>= 8;
-            lengthField[1] = (byte) (len & 0xff);
-        } else {
-            lengthField = new byte[5];
-            lengthField[0] = (byte) 0x84;
-            lengthField[4] = (byte) (len & 0xff);
-            len >>= 8;
-            lengthField[3] = (byte) (len & 0xff);
-            len >>= 8;
-            lengthField[2] = (byte) (len & 0xff);
-            len >>= 8;
-            lengthField[1] = (byte) (len & 0xff);
+            return 4;
+        }
+        return 5;
+    }
+
+    private int writeLength( byte[] dst, int offset, int len ) {
+        if ( inefinite ) {
+            dst[offset++] = (byte) 0x80;
+            return offset;
+        }
+        int size = lengthLength(len) - 1;
+        if ( size == 0 ) {
+            dst[offset++] = (byte) (len & 0x7f);
+            return offset;
         }
-        return lengthField;
+        dst[offset++] = (byte) (0x80 | size);
+        for ( int i = size - 1; i >= 0; i-- ) {
+            dst[offset++] = (byte) ((len >>> (i * 8)) & 0xff);
+        }
+        return offset;
     }
 
     /**
@@ -183,10 +376,22 @@ public abstract class ASN1Object<T> implements java.lang.Comparable<ASN1Object>
      */
     public void decodeBody( InputStream in, int length ) throws IOException {
         byte[] data = new byte[length];
-        in.read(data);
+        new DataInputStream(in).readFully(data);
         decodeBody(data);
     }
 
+    /**
+     * デコーダから呼ばれるのみ
+     * data は値部分のみの slice. 参照を持ち続けてもよい
+     * @param data 値
+     * @throws java.io.IOException
+     */
+    public void decodeBody( ByteBuffer data ) throws IOException {
+        byte[] d = new byte[data.remaining()];
+        data.get(d);
+        decodeBody(d);
+    }
+
     public void decodeBody( byte[] data ) {
         throw new UnsupportedOperationException("Not supported " + getTag() + " yet.");
     }
@@ -196,6 +401,16 @@ public abstract class ASN1Object<T> implements java.lang.Comparable<ASN1Object>
      * @return  */
     abstract public Element encodeXML( Document doc );
 
+    /**
+     * DOM を作らずに書く.
+     * 上書きしていない型は DOM を経由する.
+     * @param out 出力先
+     * @throws XMLStreamException
+     */
+    public void encodeXML( XMLStreamWriter out ) throws XMLStreamException {
+        ASN1Util.writeNode(encodeXML(ASN1Util.newDocument()), out);
+    }
+
     /** データのみ読む
      * @param element */
     abstract public void decodeXML( Element element );
@@ -205,12 +420,32 @@ public abstract class ASN1Object<T> implements java.lang.Comparable<ASN1Object>
      * @return 
      */
     public int getId() {
-        return tag.intValue();
+        if ( bigTag != null ) {
+            return bigTag.intValue();
+        }
+        return (int) tag;
     }
 
+    /**
+     * BigInteger 版. 互換用
+     * @return タグ番号
+     */
     public BigInteger getTag() {
-        if ( tag == null ) {
-            return BigInteger.valueOf(getId());
+        if ( bigTag != null ) {
+            return bigTag;
+        }
+        return BigInteger.valueOf(getTagNo());
+    }
+
+    /**
+     * タグ番号.
+     * @return 63bitを超えるときは -1
+     */
+    public long getTagNo() {
+        if ( bigTag != null ) {
+            return -1;
+        } else if ( tag < 0 ) {
+            return getId();
         }
         return tag;
     }
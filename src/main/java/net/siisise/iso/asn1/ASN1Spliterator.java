@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * 連続した DER を最上位の TLV 1つずつデコードする Spliterator.
+ * 分割は中央より後ろの最初の TLV の境界で切る. 境界は先頭から長さだけたどって探す.
+ * 大きさは残りのバイト数で見積もる.
+ * 最上位の終端 (00 00) は null にせず UncheckedIOException にする.
+ */
+class ASN1Spliterator implements Spliterator<ASN1Object> {
+
+    private final ByteBuffer src;
+    private int index;
+    private final int end;
+
+    /**
+     * @param src 連続した DER. 複製せずに参照する
+     */
+    ASN1Spliterator(ByteBuffer src) {
+        this(src, src.position(), src.limit());
+    }
+
+    private ASN1Spliterator(ByteBuffer src, int index, int end) {
+        this.src = src;
+        this.index = index;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super ASN1Object> action) {
+        if (index >= end) {
+            return false;
+        }
+        ByteBuffer in = src.duplicate();
+        in.limit(end);
+        in.position(index);
+        ASN1Object obj;
+        try {
+            obj = top(ASN1Decoder.toASN1(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        index = in.position();
+        action.accept(obj);
+        return true;
+    }
+
+    /**
+     * 最上位に終端 (00 00) は置けない
+     * @param obj デコードしたもの
+     * @return obj
+     * @throws IOException 終端のとき
+     */
+    static ASN1Object top(ASN1Object obj) throws IOException {
+        if (obj == null) {
+            throw new IOException("end-of-contents at top level");
+        }
+        return obj;
+    }
+
+    @Override
+    public Spliterator<ASN1Object> trySplit() {
+        int mid = index + (end - index) / 2;
+        ByteBuffer in = src.duplicate();
+        in.limit(end);
+        in.position(index);
+        try {
+            while (in.position() <= mid && in.hasRemaining()) {
+                ASN1Decoder.skip(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int split = in.position();
+        if (split >= end) {
+            return null;
+        }
+        ASN1Spliterator prefix = new ASN1Spliterator(src, index, split);
+        index = split;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * InputStream から1つずつ. 読み終わりは1バイト先読みして調べる.
+     */
+    static class StreamIterator implements Iterator<ASN1Object> {
+
+        private final PushbackInputStream in;
+
+        StreamIterator(InputStream in) {
+            this.in = new PushbackInputStream(in);
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                int b = in.read();
+                if (b < 0) {
+                    return false;
+                }
+                in.unread(b);
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public ASN1Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return top(ASN1Decoder.toASN1(in));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * BER/DER のプル型パーサ.
+ * StAX の XMLStreamReader のように TLV を1つずつイベントとして返す.
+ * 木を作らないので巨大な CRL なども深さ分のメモリで読める.
+ * 長さを指定しない (indefinite) 構造も終端 (EndOfContent) で閉じる.
+ *
+ * 必要な部分だけ readObject で ASN1Object にできる.
+ */
+public class ASN1StreamReader implements Closeable {
+
+    /** 構造の開始 */
+    public static final int START_CONSTRUCTED = 1;
+    /** プリミティブ */
+    public static final int PRIMITIVE = 2;
+    /** 構造の終了 */
+    public static final int END_CONSTRUCTED = 3;
+    /** 入力の終わり */
+    public static final int END_DOCUMENT = 4;
+
+    private final InputStream in;
+    /** 先読み1バイト. -2 はなし */
+    private int peek = -2;
+    /** 読んだバイト数 */
+    private long offset;
+
+    private int event;
+    private ASN1Cls cls;
+    private boolean struct;
+    private long tag;
+    private BigInteger bigTag;
+    /** 値の長さ. -1 は可変長 */
+    private long length;
+    /** TLV 先頭の位置 */
+    private long start;
+    /** プリミティブの未読部分 */
+    private long remaining;
+
+    /** 開いている構造の深さ */
+    private int depth;
+    /** 構造の終了位置. -1 は可変長 */
+    private long[] ends = new long[16];
+    private long[] starts = new long[16];
+    private long[] lengths = new long[16];
+    private long[] tags = new long[16];
+    private BigInteger[] bigTags = new BigInteger[16];
+    private ASN1Cls[] classes = new ASN1Cls[16];
+
+    public ASN1StreamReader(InputStream in) {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+    }
+
+    public ASN1StreamReader(ReadableByteChannel ch) {
+        this(Channels.newInputStream(ch));
+    }
+
+    private int read() throws IOException {
+        int d;
+        if (peek != -2) {
+            d = peek;
+            peek = -2;
+        } else {
+            d = in.read();
+        }
+        if (d < 0) {
+            throw new EOFException();
+        }
+        offset++;
+        return d;
+    }
+
+    /**
+     * 次のイベントがあるか
+     * @return END_DOCUMENT 以外が残っている
+     * @throws IOException
+     */
+    public boolean hasNext() throws IOException {
+        if (event == END_DOCUMENT) {
+            return false;
+        }
+        if (depth > 0 || (event == PRIMITIVE && remaining > 0)) {
+            return true;
+        }
+        if (peek == -2) {
+            peek = in.read();
+        }
+        return peek >= 0;
+    }
+
+    /**
+     * 次のイベントへ進む.
+     * プリミティブの値を読んでいないときは読み飛ばす.
+     * @return イベント
+     * @throws IOException
+     */
+    public int next() throws IOException {
+        skipValue();
+        if (depth > 0 && ends[depth - 1] >= 0 && offset >= ends[depth - 1]) {
+            if (offset > ends[depth - 1]) {
+                throw new IOException("length mismatch at " + offset);
+            }
+            return pop();
+        }
+        if (depth == 0) {
+            if (peek == -2) {
+                peek = in.read();
+            }
+            if (peek < 0) {
+                event = END_DOCUMENT;
+                return event;
+            }
+        }
+        start = offset;
+        int code = read();
+        cls = ASN1Cls.valueOf((code >> 6) & 0x03);
+        struct = (code & 0x20) != 0;
+        tag = code & 0x1f;
+        bigTag = null;
+        if (tag == 0x1f) { // 拡張
+            tag = 0;
+            int d;
+            do {
+                d = read();
+                if (bigTag != null) {
+                    bigTag = bigTag.shiftLeft(7).or(BigInteger.valueOf(d & 0x7f));
+                } else if ((tag >>> 56) != 0) { // 63bitを超える
+                    bigTag = BigInteger.valueOf(tag).shiftLeft(7).or(BigInteger.valueOf(d & 0x7f));
+                    tag = -1;
+                } else {
+                    tag = (tag << 7) | (d & 0x7f);
+                }
+            } while ((d & 0x80) != 0);
+        }
+        length = readLength();
+        if (code == 0 && length == 0) { // 終端
+            if (depth == 0 || ends[depth - 1] >= 0) {
+                throw new IOException("unexpected end of contents at " + start);
+            }
+            return pop();
+        }
+        if (struct) {
+            push();
+            event = START_CONSTRUCTED;
+        } else {
+            if (length < 0) {
+                throw new IOException("indefinite primitive at " + start);
+            }
+            remaining = length;
+            event = PRIMITIVE;
+        }
+        return event;
+    }
+
+    private long readLength() throws IOException {
+        int len = read();
+        if (len < 0x80) {
+            return len;
+        }
+        int size = len & 0x7f;
+        if (size == 0) {
+            return -1;
+        } else if (size > 8) {
+            throw new IOException("length too long at " + start);
+        }
+        long l = 0;
+        for (int i = 0; i < size; i++) {
+            l = (l << 8) | read();
+        }
+        if (l < 0) {
+            throw new IOException("length too long at " + start);
+        }
+        return l;
+    }
+
+    private void push() {
+        if (depth == ends.length) {
+            int size = depth * 2;
+            ends = Arrays.copyOf(ends, size);
+            starts = Arrays.copyOf(starts, size);
+            lengths = Arrays.copyOf(lengths, size);
+            tags = Arrays.copyOf(tags, size);
+            bigTags = Arrays.copyOf(bigTags, size);
+            classes = Arrays.copyOf(classes, size);
+        }
+        ends[depth] = length < 0 ? -1 : offset + length;
+        starts[depth] = start;
+        lengths[depth] = length;
+        tags[depth] = tag;
+        bigTags[depth] = bigTag;
+        classes[depth] = cls;
+        depth++;
+    }
+
+    private int pop() {
+        depth--;
+        cls = classes[depth];
+        tag = tags[depth];
+        bigTag = bigTags[depth];
+        bigTags[depth] = null;
+        start = starts[depth];
+        length = lengths[depth];
+        struct = true;
+        remaining = 0;
+        event = END_CONSTRUCTED;
+        return event;
+    }
+
+    private void skipValue() throws IOException {
+        while (event == PRIMITIVE && remaining > 0) {
+            if (peek != -2) {
+                read();
+                remaining--;
+                continue;
+            }
+            long s = in.skip(remaining);
+            if (s <= 0) {
+                read();
+                s = 1;
+            } else {
+                offset += s;
+            }
+            remaining -= s;
+        }
+    }
+
+    public int getEventType() {
+        return event;
+    }
+
+    public ASN1Cls getASN1Cls() {
+        return cls;
+    }
+
+    public boolean isStruct() {
+        return struct;
+    }
+
+    /**
+     * タグ番号.
+     * @return 63bitを超えるときは -1
+     */
+    public long getTagNo() {
+        return tag;
+    }
+
+    public BigInteger getTag() {
+        return bigTag != null ? bigTag : BigInteger.valueOf(tag);
+    }
+
+    /**
+     * 値の長さ.
+     * @return -1 は可変長
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * TLV の先頭位置.
+     * @return 入力の先頭からのバイト数
+     */
+    public long getOffset() {
+        return start;
+    }
+
+    /**
+     * 開いている構造の深さ
+     * @return 0 はトップレベル
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * プリミティブの値を読む.
+     * @return 値
+     * @throws IOException
+     */
+    public byte[] getValue() throws IOException {
+        if (event != PRIMITIVE) {
+            throw new IllegalStateException();
+        }
+        if (remaining != length) {
+            throw new IllegalStateException("value already read");
+        }
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("value too long");
+        }
+        byte[] value = new byte[(int) length];
+        int off = 0;
+        if (peek != -2 && value.length > 0) {
+            value[off++] = (byte) read();
+        }
+        while (off < value.length) {
+            int s = in.read(value, off, value.length - off);
+            if (s < 0) {
+                throw new EOFException();
+            }
+            off += s;
+            offset += s;
+        }
+        remaining = 0;
+        return value;
+    }
+
+    /**
+     * 現在の要素を ASN1Object にする.
+     * START_CONSTRUCTED のときは対応する END_CONSTRUCTED まで読み、その END_CONSTRUCTED は返さない.
+     * @return 要素
+     * @throws IOException
+     */
+    public ASN1Object readObject() throws IOException {
+        if (event == PRIMITIVE) {
+            ASN1Object obj = ASN1Decoder.newObject(cls, false, tag, bigTag, (int) length);
+            obj.decodeBody(ByteBuffer.wrap(getValue()));
+            return obj;
+        } else if (event != START_CONSTRUCTED) {
+            throw new IllegalStateException();
+        }
+        ASN1Struct obj = (ASN1Struct) ASN1Decoder.newObject(cls, true, tag, bigTag, (int) length);
+        obj.inefinite = length < 0;
+        int d = depth;
+        while (next() != END_CONSTRUCTED || depth >= d) {
+            obj.add(readObject());
+        }
+        return obj;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -17,11 +17,16 @@ package net.siisise.iso.asn1;
 
 import java.io.*;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -34,6 +39,25 @@ import org.w3c.dom.NodeList;
 public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
 
     private List<ASN1Object> list = new ArrayList<>();
+    /**
+     * 遅延デコードの元データ.
+     * null でなければ list の null の位置は未デコード
+     */
+    private ByteBuffer lazySrc;
+    /**
+     * lazySrc 内の子の開始位置. 最後は終了位置
+     */
+    private int[] lazyOffsets;
+    /**
+     * DER の SET を書くときの並べ替え済みの子の符号.
+     * bodyLength で作り直し、この構造を変更したら捨てる.
+     * 同じ SET が木の2か所にあっても、複数のスレッドが符号化しても書く側はこれを読むだけ
+     */
+    private volatile byte[][] setEncoded;
+    /**
+     * freeze で求めた値の長さ. -1 は未定
+     */
+    private int frozenLength = -1;
 
     /**
      * falseのときふりをする?
@@ -48,6 +72,10 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
         super(cls, id);
     }
 
+    public ASN1Struct(ASN1Cls cls, long id) {
+        super(cls, id);
+    }
+
     public ASN1Struct(ASN1Object obj, boolean str) {
         super(ASN1.valueOf(obj.getId()));
         attrStruct = str;
@@ -69,27 +97,195 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
 
     @Override
     public byte[] encodeBody() {
-        byte[][] all = new byte[list.size()][];
-        byte[] full;
-        int off = 0;
+        byte[] full = new byte[bodyLength()];
+        encodeBody(full, 0);
+        return full;
+    }
+
+    /**
+     * 子の長さを求めて保持しておく
+     * @return 子の長さの合計
+     */
+    @Override
+    protected int bodyLength() {
+        if (frozenLength >= 0) {
+            return frozenLength;
+        }
+        if (isDERSet()) {
+            return setLength();
+        }
+
         int len = 0;
+        for (int i = 0; i < list.size(); i++) {
+            ASN1Object object = list.get(i);
+            if (object == null && lazySrc != null) { // 未デコード
+                len += lazyOffsets[i + 1] - lazyOffsets[i];
+            } else {
+                len += object.encodedLength();
+            }
+        }
+        return len;
+    }
+
+    /**
+     * 汎用の SET は子を並べ替えて書く
+     */
+    boolean isDERSet() {
+        return getId() == ASN1.SET.id && getASN1Cls() == ASN1Cls.汎用;
+    }
 
-        if (getId() == ASN1.SET.tag.intValue()) {
-            Collections.sort(list);
+    /**
+     * X.690 11.6 DER の SET OF.
+     * @return 子の長さの合計
+     */
+    private int setLength() {
+        byte[][] encoded = sortSet();
+        setEncoded = encoded;
+        int len = 0;
+        for (byte[] e : encoded) {
+            len += e.length;
         }
+        return len;
+    }
 
-        for (ASN1Object object : list) {
-            all[off] = object.encodeAll();
-            len += all[off++].length;
+    /**
+     * 書くときの並べ替え済みの子の符号.
+     * 長さを求めずに書くときもここで並べるので、SET を list の順には書かない
+     */
+    private byte[][] setEncoded() {
+        byte[][] encoded = setEncoded;
+        if (encoded == null) {
+            encoded = sortSet();
+            setEncoded = encoded;
         }
-        full = new byte[len];
-        off = 0;
-        for (byte[] data : all) {
-//            System.out.println("cpy len " + data.length );
-            System.arraycopy(data, 0, full, off, data.length);
-            off += data.length;
+        return encoded;
+    }
+
+    /**
+     * 子をそれぞれ1回だけ符号化し、compareSet の順に並べる.
+     * list の順は変えない.
+     * @return 並べ替えた子の符号
+     */
+    private byte[][] sortSet() {
+        int size = list.size();
+        byte[][] encoded = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            ASN1Object object = list.get(i);
+            if (object == null && lazySrc != null) { // 未デコード
+                ByteBuffer raw = raw(i);
+                encoded[i] = new byte[raw.remaining()];
+                raw.get(encoded[i]);
+            } else {
+                encoded[i] = object.encodeAll();
+            }
+        }
+        Arrays.sort(encoded, ASN1Struct::compareSet);
+        return encoded;
+    }
+
+    /**
+     * DER の SET の子の順.
+     * X.690 10.3 SET はタグの順. クラス (汎用, 応用, コンテキスト特定, プライベート), タグ番号の順で、
+     * 構造化フラグは見ない.
+     * X.690 11.6 SET OF は子のタグが同じなので符号の順.
+     * @param a 子1つの符号
+     * @param b 子1つの符号
+     */
+    static int compareSet(byte[] a, byte[] b) {
+        int c = ((a[0] >> 6) & 0x03) - ((b[0] >> 6) & 0x03);
+        if (c != 0) {
+            return c;
+        }
+        int alen = tagLength(a);
+        int blen = tagLength(b);
+        if (alen == 1 && blen == 1) {
+            c = (a[0] & 0x1f) - (b[0] & 0x1f);
+        } else if (alen != blen) { // 最短の符号なので長い方が大きい
+            c = alen - blen;
+        } else {
+            for (int i = 1; i < alen && c == 0; i++) {
+                c = (a[i] & 0xff) - (b[i] & 0xff);
+            }
+        }
+        return c != 0 ? c : compareOctets(a, b);
+    }
+
+    /**
+     * 識別子のバイト数
+     */
+    private static int tagLength(byte[] encoded) {
+        if ((encoded[0] & 0x1f) != 0x1f) {
+            return 1;
+        }
+        int i = 1;
+        while ((encoded[i] & 0x80) != 0) {
+            i++;
+        }
+        return i + 1;
+    }
+
+    /**
+     * 符号なしで前から比べる. 短い方は後ろを0で埋めたものとする
+     */
+    static int compareOctets(byte[] a, byte[] b) {
+        int len = Math.min(a.length, b.length);
+        for (int i = 0; i < len; i++) {
+            if (a[i] != b[i]) {
+                return (a[i] & 0xff) - (b[i] & 0xff);
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * 未デコードの子は元のバイト列をそのまま書く
+     */
+    @Override
+    protected int encodeBody(byte[] dst, int offset) {
+        if (isDERSet()) {
+            for (byte[] encoded : setEncoded()) {
+                System.arraycopy(encoded, 0, dst, offset, encoded.length);
+                offset += encoded.length;
+            }
+            return offset;
+        }
+        for (int i = 0; i < list.size(); i++) {
+            ASN1Object object = list.get(i);
+            if (object == null && lazySrc != null) {
+                ByteBuffer raw = raw(i);
+                int len = raw.remaining();
+                raw.get(dst, offset, len);
+                offset += len;
+            } else {
+                offset = object.writeAll(dst, offset);
+            }
+        }
+        return offset;
+    }
+
+    @Override
+    protected void encodeBody(OutputStream out) throws IOException {
+        if (isDERSet()) {
+            for (byte[] encoded : setEncoded()) {
+                out.write(encoded);
+            }
+            return;
+        }
+        for (int i = 0; i < list.size(); i++) {
+            ASN1Object object = list.get(i);
+            if (object == null && lazySrc != null) {
+                ByteBuffer raw = raw(i);
+                if (raw.hasArray()) {
+                    out.write(raw.array(), raw.arrayOffset() + raw.position(), raw.remaining());
+                } else {
+                    byte[] tmp = new byte[raw.remaining()];
+                    raw.get(tmp);
+                    out.write(tmp);
+                }
+            } else {
+                object.writeAll(out);
+            }
         }
-        return full;
     }
 
     /**
@@ -100,10 +296,12 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
      */
     @Override
     public void decodeBody(InputStream in, int length) throws IOException {
+        modify();
         list.clear();
+        lazySrc = null;
         if (length >= 0) {
             byte[] data = new byte[length];
-            in.read(data);
+            new DataInputStream(in).readFully(data);
             InputStream boxIn = new ByteArrayInputStream(data);
             decodeBody(boxIn);
         } else {
@@ -113,7 +311,132 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
         //  throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    /**
+     * 子は data の slice を参照する.
+     * 大きいときは子の境界を先に調べて並列にデコードする.
+     * @param data 値部分
+     * @throws IOException 
+     * @see ASN1Decoder#setParallelThreshold(int)
+     */
+    @Override
+    public void decodeBody(ByteBuffer data) throws IOException {
+        modify();
+        list.clear();
+        lazySrc = null;
+        if (ASN1Decoder.parallel(data.remaining())) {
+            ByteBuffer[] children = ASN1BulkDecoder.splitDER(data);
+            list.addAll(Arrays.asList(ASN1BulkDecoder.decode(children, false, ForkJoinPool.commonPool())));
+            data.position(data.limit());
+            return;
+        }
+        while (data.hasRemaining()) {
+            list.add(ASN1Decoder.toASN1(data));
+        }
+    }
+
+    /**
+     * 子の位置だけ調べておき、使うときにデコードする.
+     * 子も遅延デコードになる.
+     * @param data 値部分
+     * @throws IOException 
+     */
+    void decodeLazy(ByteBuffer data) throws IOException {
+        modify();
+        list.clear();
+        ByteBuffer scan = data.duplicate();
+        int[] offsets = new int[16];
+        int size = 0;
+        while (scan.hasRemaining()) {
+            if (size + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[size++] = scan.position();
+            ASN1Decoder.skip(scan);
+            list.add(null);
+        }
+        offsets[size] = scan.position();
+        lazyOffsets = offsets;
+        lazySrc = data;
+    }
+
+    /**
+     * 変更する前に呼ぶ. 並べ替えた SET の符号を捨てる
+     * @throws UnsupportedOperationException freeze 済み
+     */
+    private void modify() {
+        checkFrozen();
+        setEncoded = null;
+    }
+
+    /**
+     * 未デコードの子の元データ
+     */
+    private ByteBuffer raw(int index) {
+        ByteBuffer raw = lazySrc.duplicate();
+        raw.limit(lazyOffsets[index + 1]);
+        raw.position(lazyOffsets[index]);
+        return raw;
+    }
+
+    /**
+     * 子を取得する. 未デコードならここでデコードする
+     * @param index 位置
+     * @return 子
+     */
+    private ASN1Object child(int index) {
+        ASN1Object obj = list.get(index);
+        if (obj == null && lazySrc != null) {
+            try {
+                obj = ASN1Decoder.toASN1(raw(index), true);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            list.set(index, obj);
+        }
+        return obj;
+    }
+
+    /**
+     * 未デコードの子をすべてデコードする
+     */
+    private void fill() {
+        if (lazySrc != null) {
+            for (int i = 0; i < list.size(); i++) {
+                child(i);
+            }
+            lazySrc = null;
+            lazyOffsets = null;
+        }
+    }
+
+    /**
+     * デコードせずにタグ番号を見る
+     * @param index 位置
+     * @return タグ番号 63bitを超えるときは-1
+     */
+    private long tagNo(int index) {
+        ASN1Object obj = list.get(index);
+        if (obj != null || lazySrc == null) {
+            return obj.getTagNo();
+        }
+        int pos = lazyOffsets[index];
+        long tag = lazySrc.get(pos++) & 0x1f;
+        if (tag == 0x1f) {
+            tag = 0;
+            int d;
+            do {
+                d = lazySrc.get(pos++);
+                if ((tag >>> 56) != 0) {
+                    return -1;
+                }
+                tag = (tag << 7) | (d & 0x7f);
+            } while ((d & 0x80) != 0);
+        }
+        return tag;
+    }
+
     void decodeBody(InputStream in) throws IOException {
+        modify();
         while (in.available() > 0) {
             ASN1Object o = ASN1Decoder.toASN1(in);
             list.add(o);
@@ -151,6 +474,7 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
             ele.setAttribute("class", Integer.toString(getASN1Class()));
             ele.setAttribute("tag", getTag().toString());
         }
+        fill();
         for (ASN1Object obj : list) {
             ele.appendChild(obj.encodeXML(doc));
         }
@@ -160,13 +484,59 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
         return ele;
     }
 
+    /**
+     * 子は読んだ順に書く. 未デコードの子もここでデコードする
+     * @param out 出力先
+     * @throws XMLStreamException
+     */
+    @Override
+    public void encodeXML(XMLStreamWriter out) throws XMLStreamException {
+        writeStartElement(out, getASN1Cls(), getTag(), attrStruct, inefinite);
+        for (int i = 0; i < list.size(); i++) {
+            child(i).encodeXML(out);
+        }
+        out.writeEndElement();
+    }
+
+    /**
+     * encodeXML(Document) と同じ形式の開始タグ.
+     * ASN1StreamReader からも使う
+     * @param out 出力先
+     * @param cls クラス
+     * @param tag タグ番号
+     * @param attrStruct
+     * @param inefinite 可変長
+     * @throws XMLStreamException
+     */
+    static void writeStartElement(XMLStreamWriter out, ASN1Cls cls, BigInteger tag, boolean attrStruct, boolean inefinite) throws XMLStreamException {
+        if (cls == ASN1Cls.汎用) {
+            ASN1 n2 = tag.bitLength() < 31 ? ASN1.valueOf(tag.intValue()) : ASN1.拡張;
+            if (n2 == ASN1.拡張) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+            out.writeStartElement(n2.toString());
+            if (n2 != ASN1.SEQUENCE && n2 != ASN1.SET) {
+                out.writeAttribute("struct", "" + attrStruct);
+            }
+        } else {
+            out.writeStartElement("struct");
+            out.writeAttribute("class", Integer.toString(cls.cls));
+            out.writeAttribute("tag", tag.toString());
+        }
+        if (inefinite) {
+            out.writeAttribute("inefinite", "true");
+        }
+    }
+
     @Override
     public void decodeXML(Element xml) {
+        modify();
         String inf = xml.getAttribute("inefinite");
 
         if (inf != null && Boolean.parseBoolean(inf)) {
             inefinite = true;
         }
+        fill();
         NodeList child = xml.getChildNodes();
         for (int i = 0; i < child.getLength(); i++) {
             Node n = child.item(i);
@@ -210,6 +580,7 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(getName() + " EOF:" + inefinite + " {");
+        fill();
         for (ASN1Object obj : list) {
             sb.append(plusIndent(obj.toString()));
         }
@@ -228,7 +599,7 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
 
         for (int i = 0; i < offsets.length; i++) {
             if (obj instanceof ASN1Struct) {
-                obj = ((ASN1Struct) obj).list.get(offsets[i]); // listにしないとネストする
+                obj = ((ASN1Struct) obj).child(offsets[i]); // listにしないとネストする
             } else {
                 throw new NullPointerException();
                 //                    return null;
@@ -256,6 +627,10 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
      * @see #tagSize( BigInteger )
      */
     public ASN1Object get(BigInteger tag, int index) {
+        if (tag.signum() >= 0 && tag.bitLength() < 64) {
+            return getByTag(tag.longValue(), index);
+        }
+        fill();
         for (int n = 0; n < list.size(); n++) {
             if (list.get(n).getTag().equals(tag)) {
                 index--;
@@ -267,7 +642,29 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
         return null;
     }
 
+    /**
+     * 同タグでn番目
+     *
+     * @param tag タグ番号
+     * @param index
+     * @return
+     * @see #tagSize( long )
+     */
+    public ASN1Object getByTag(long tag, int index) {
+        for (int n = 0; n < list.size(); n++) {
+            if (tagNo(n) == tag) {
+                index--;
+                if (index < 0) {
+                    return child(n);
+                }
+            }
+        }
+        return null;
+    }
+
     void set(int index, ASN1Object obj) {
+        modify();
+        fill();
         list.set(index, obj);
     }
 
@@ -277,20 +674,26 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
      * @param index 巧妙な位置
      */
     void set(ASN1Object obj, int... index) {
+        modify();
         if (index.length > 1) {
             int[] idx = new int[index.length - 1];
             System.arraycopy(index, 1, idx, 0, idx.length);
             getStruct(index[0]).set(obj, idx);
         } else {
+            fill();
             list.set(index[0], obj);
         }
     }
 
     public void add(ASN1Object obj) {
+        modify();
+        fill();
         list.add(obj);
     }
 
     public void add(int index, ASN1Object obj) {
+        modify();
+        fill();
         list.add(index, obj);
     }
 
@@ -300,11 +703,13 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
      * @param index 巧妙な位置
      */
     public void add(ASN1Object obj, int... index) {
+        modify();
         if (index.length > 1) {
             int[] idx = new int[index.length - 1];
             System.arraycopy(index, 1, idx, 0, idx.length);
             getStruct(index[0]).add(obj, idx);
         } else {
+            fill();
             list.add(index[0], obj);
         }
     }
@@ -315,6 +720,10 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
      * @param tag
      */
     public int tagSize(BigInteger tag) {
+        if (tag.signum() >= 0 && tag.bitLength() < 64) {
+            return tagSize(tag.longValue());
+        }
+        fill();
         int count = 0;
         for (ASN1Object obj : list) {
             if (obj.getTag().equals(tag)) {
@@ -325,12 +734,48 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
     }
 
     /**
-     * 型を変えたい このままでは使わない方がいい
+     * タグ限定サイズ
      *
+     * @param tag タグ番号
+     */
+    public int tagSize(long tag) {
+        int count = 0;
+        for (int n = 0; n < list.size(); n++) {
+            if (tagNo(n) == tag) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 読み取り専用にする.
+     * 未デコードの子はここでデコードし、子もすべて freeze する.
+     * 子の list は変更できなくなる. SET は並べ替えた符号を持ち続ける.
+     * @return this
+     */
+    @Override
+    public ASN1Struct freeze() {
+        if (!isFrozen()) {
+            fill();
+            for (ASN1Object obj : list) {
+                obj.freeze();
+            }
+            list = Collections.unmodifiableList(list);
+            frozenLength = bodyLength();
+            super.freeze();
+        }
+        return this;
+    }
+
+    /**
+     * 型を変えたい このままでは使わない方がいい
+     * freeze 後は変更できない list
      * @return
      */
     @Override
     public List<ASN1Object> getValue() {
+        fill();
         return list;
     }
 
@@ -340,6 +785,9 @@ public class ASN1Struct extends ASN1Object<List<ASN1Object>> {
      */
     @Override
     public void setValue(List<ASN1Object> val) {
+        modify();
+        lazySrc = null;
+        lazyOffsets = null;
         list = val;
     }
 }
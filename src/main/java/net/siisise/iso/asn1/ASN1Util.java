@@ -15,19 +15,39 @@
  */
 package net.siisise.iso.asn1;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.TransformerException;
 import net.siisise.xml.TrXML;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 
 /**
  * XML系を中心に分離
@@ -41,8 +61,57 @@ public class ASN1Util {
         return asn1.encodeAll();
     }
     
+    /**
+     * src は複製してからデコードするので、後で変更してもよい.
+     * @param src DER
+     * @return ASN.1 Object
+     * @throws IOException 
+     */
     public static ASN1Object toASN1(byte[] src ) throws IOException {
-        return ASN1Decoder.toASN1( new ByteArrayInputStream(src));
+        return ASN1Decoder.toASN1( ByteBuffer.wrap(src.clone()));
+    }
+
+    /**
+     * 複製しない版.
+     * OCTETSTRING などは src の一部を参照するので、結果を使う間は src を変更しないこと.
+     * @param src DER
+     * @return ASN.1 Object
+     * @throws IOException 
+     */
+    public static ASN1Object toASN1Shared(byte[] src) throws IOException {
+        return ASN1Decoder.toASN1(ByteBuffer.wrap(src));
+    }
+
+    /**
+     * ByteBuffer 版.
+     * position から1つ読む. OCTETSTRING などは src の slice を参照する.
+     * @param src heap, direct, mapped
+     * @return ASN.1 Object
+     * @throws IOException 
+     */
+    public static ASN1Object toASN1(ByteBuffer src) throws IOException {
+        return ASN1Decoder.toASN1(src);
+    }
+
+    /**
+     * 遅延デコード.
+     * 構造の子は参照したときにデコードする. src は変更しないこと.
+     * @param src DER
+     * @return ASN.1 Object
+     * @throws IOException 
+     */
+    public static ASN1Object toASN1Lazy(byte[] src) throws IOException {
+        return ASN1Decoder.toASN1(ByteBuffer.wrap(src), true);
+    }
+
+    /**
+     * 遅延デコード.
+     * @param src DER
+     * @return ASN.1 Object
+     * @throws IOException 
+     */
+    public static ASN1Object toASN1Lazy(ByteBuffer src) throws IOException {
+        return ASN1Decoder.toASN1(src, true);
     }
     
     /**
@@ -53,9 +122,131 @@ public class ASN1Util {
      * @throws ParserConfigurationException 
      */
     static Document toXML(ASN1Object top) throws ParserConfigurationException {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        return toXML(top,builder);
+        return toXML(top,BUILDER.get());
+    }
+
+    private static final DocumentBuilderFactory DOM_FACTORY = DocumentBuilderFactory.newInstance();
+    private static final XMLOutputFactory STAX_FACTORY = XMLOutputFactory.newInstance();
+    /**
+     * DocumentBuilder はスレッドごとに使い回す
+     */
+    private static final ThreadLocal<DocumentBuilder> BUILDER = ThreadLocal.withInitial(() -> {
+        try {
+            synchronized (DOM_FACTORY) {
+                return DOM_FACTORY.newDocumentBuilder();
+            }
+        } catch (ParserConfigurationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    static Document newDocument() {
+        return BUILDER.get().newDocument();
+    }
+
+    /**
+     * ASN1 → XML text.
+     * DOM を作らずに toXML と同じ形式で書く.
+     * @param top ASN.1
+     * @param out 出力先. 閉じない
+     * @throws XMLStreamException
+     */
+    public static void toXML(ASN1Object top, Writer out) throws XMLStreamException {
+        XMLStreamWriter xml = STAX_FACTORY.createXMLStreamWriter(out);
+        xml.writeStartDocument();
+        top.encodeXML(xml);
+        xml.writeEndDocument();
+        xml.flush();
+    }
+
+    /**
+     * ASN1 → XML text.
+     * @param top ASN.1
+     * @param out 出力先 UTF-8. 閉じない
+     * @throws XMLStreamException
+     */
+    public static void toXML(ASN1Object top, OutputStream out) throws XMLStreamException {
+        XMLStreamWriter xml = STAX_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        xml.writeStartDocument("UTF-8", "1.0");
+        top.encodeXML(xml);
+        xml.writeEndDocument();
+        xml.flush();
+    }
+
+    /**
+     * DER → XML text.
+     * ASN1StreamReader の次の要素を1つ、木を作らずに書く.
+     * プリミティブのみ1つずつ ASN1Object にする.
+     * @param in DER
+     * @param out 出力先
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public static void toXML(ASN1StreamReader in, XMLStreamWriter out) throws IOException, XMLStreamException {
+        int depth = in.getDepth();
+        int event = in.next();
+        while (true) {
+            switch (event) {
+                case ASN1StreamReader.START_CONSTRUCTED:
+                    ASN1Struct.writeStartElement(out, in.getASN1Cls(), in.getTag(), true, in.getLength() < 0);
+                    break;
+                case ASN1StreamReader.PRIMITIVE:
+                    in.readObject().encodeXML(out);
+                    break;
+                case ASN1StreamReader.END_CONSTRUCTED:
+                    out.writeEndElement();
+                    break;
+                default:
+                    throw new EOFException();
+            }
+            if (in.getDepth() <= depth) {
+                return;
+            }
+            event = in.next();
+        }
+    }
+
+    /**
+     * DER → XML text.
+     * @param in DER
+     * @param out 出力先 UTF-8. 閉じない
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public static void toXML(ASN1StreamReader in, OutputStream out) throws IOException, XMLStreamException {
+        XMLStreamWriter xml = STAX_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        xml.writeStartDocument("UTF-8", "1.0");
+        toXML(in, xml);
+        xml.writeEndDocument();
+        xml.flush();
+    }
+
+    /**
+     * DOM の要素をそのまま書く
+     * @param node 要素
+     * @param out 出力先
+     * @throws XMLStreamException
+     */
+    static void writeNode(Node node, XMLStreamWriter out) throws XMLStreamException {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                out.writeStartElement(node.getNodeName());
+                NamedNodeMap attrs = node.getAttributes();
+                for (int i = 0; i < attrs.getLength(); i++) {
+                    Node attr = attrs.item(i);
+                    out.writeAttribute(attr.getNodeName(), attr.getNodeValue());
+                }
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    writeNode(child, out);
+                }
+                out.writeEndElement();
+                break;
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                out.writeCharacters(node.getNodeValue());
+                break;
+            default:
+        }
     }
     
     /**
@@ -119,16 +310,16 @@ public class ASN1Util {
         String tagName = ele.getTagName();
         ASN1 t;
         if ( "struct".equals(tagName) ) {
-            //String c = ele.getAttribute("class");
+            String c = ele.getAttribute("class");
             String tag = ele.getAttribute("tag");
-            root = new ASN1Struct( (byte)2, new BigInteger(tag) );
+            root = new ASN1Struct( c.isEmpty() ? (byte)2 : Byte.parseByte(c), new BigInteger(tag) );
         } else {
             t = ASN1.valueOf(tagName);
             String struct = ele.getAttribute("struct");
             if ( struct != null && Boolean.parseBoolean(struct) ) {
-                root = new ASN1Struct( (byte)0, t.tag );
+                root = new ASN1Struct( ASN1Cls.汎用, t.id );
             } else {
-                root = ASN1Decoder.decodeTag( t.tag );
+                root = ASN1Decoder.decodeTag( t.id );
             }
         }
         
@@ -138,6 +329,88 @@ public class ASN1Util {
         return root;
     }
     
+    /**
+     * XML text → DER.
+     * ASN1Object の木を作らずに書く. toASN1(Element).encodeAll() と同じバイト列になる.
+     * メモリは入れ子の深さだけでなく、XML 中の構造の数 (1つにつき int 1つ) を使う.
+     * 汎用の SET は子をすべて符号化して持つので、大きな SET OF ではその大きさに比例する.
+     * @param xml toXML の形式
+     * @param out 出力先. 閉じない
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public static void toDER(byte[] xml, OutputStream out) throws IOException, XMLStreamException {
+        new XMLDERConverter(() -> new ByteArrayInputStream(xml)).convert(out);
+    }
+
+    /**
+     * XML file → DER.
+     * ファイルは2回読む. 1回目で構造の長さを求め、2回目で書く.
+     * メモリは入れ子の深さだけでなく、XML 中の構造の数 (1つにつき int 1つ) を使う.
+     * 汎用の SET は子をすべて符号化して持つので、大きな SET OF ではその大きさに比例する.
+     * toASN1(Element).encodeAll() と同じバイト列になる.
+     * @param xml toXML の形式
+     * @param out 出力先. 閉じない
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public static void toDER(File xml, OutputStream out) throws IOException, XMLStreamException {
+        new XMLDERConverter(() -> new BufferedInputStream(new FileInputStream(xml))).convert(out);
+    }
+
+    /**
+     * ASN.1 → JSON text.
+     * @param top ASN.1
+     * @param out 出力先. 閉じない
+     * @throws IOException
+     * @see JERWriter
+     */
+    public static void toJSON(ASN1Object top, Writer out) throws IOException {
+        new JERWriter(out).write(top);
+    }
+
+    /**
+     * DER → JSON text.
+     * ASN1StreamReader の次の要素を1つ、木を作らずに書く.
+     * @param in DER
+     * @param out 出力先. 閉じない
+     * @throws IOException
+     */
+    public static void toJSON(ASN1StreamReader in, Writer out) throws IOException {
+        new JERWriter(out).write(in);
+    }
+
+    /**
+     * JSON text → ASN.1.
+     * @param in toJSON の形式
+     * @return ASN.1
+     * @throws IOException
+     */
+    public static ASN1Object fromJSON(Reader in) throws IOException {
+        return new JERReader(in).read();
+    }
+
+    /**
+     * ASN.1 → GSER text.
+     * @param top ASN.1
+     * @param out 出力先
+     * @throws IOException
+     * @see GSERWriter
+     */
+    public static void toGSER(ASN1Object top, Appendable out) throws IOException {
+        new GSERWriter(out).write(top);
+    }
+
+    /**
+     * GSER text → ASN.1.
+     * @param src GSER
+     * @return ASN.1
+     * @see GSERReader
+     */
+    public static ASN1Object fromGSER(CharSequence src) {
+        return new GSERReader(src).read();
+    }
+
     public static List<ASN1Object> toASN1List(InputStream in) throws IOException {
         List<ASN1Object> asnobjs = new ArrayList<>();
         while ( in.available() > 0 ) {
@@ -146,12 +419,108 @@ public class ASN1Util {
         return asnobjs;
     }
     
+    public static List<ASN1Object> toASN1List(ByteBuffer src) throws IOException {
+        List<ASN1Object> asnobjs = new ArrayList<>();
+        while ( src.hasRemaining() ) {
+            asnobjs.add(ASN1Decoder.toASN1(src));
+        }
+        return asnobjs;
+    }
+
+    /**
+     * src は複製してからデコードするので、後で変更してもよい.
+     * @param src 連続したDER
+     * @return
+     * @throws IOException 
+     */
     public static List<ASN1Object> toASN1List(byte[] src) throws IOException {
-        ByteArrayInputStream in = new ByteArrayInputStream(src);
-        List<ASN1Object> ao;
-        ao = toASN1List(in);
-        in.close();
-        return ao;
+        return toASN1List(ByteBuffer.wrap(src.clone()));
+    }
+
+    /**
+     * 複製しない版. 結果を使う間は src を変更しないこと.
+     * @param src 連続したDER
+     * @return
+     * @throws IOException 
+     */
+    public static List<ASN1Object> toASN1ListShared(byte[] src) throws IOException {
+        return toASN1List(ByteBuffer.wrap(src));
+    }
+
+    /**
+     * 連続した DER を1つずつデコードする Stream.
+     * 最上位の TLV の境界で分割できるので parallel() も使える.
+     * 最上位の終端 (00 00) は null にせず UncheckedIOException にする.
+     * src は複製せずに参照するので変更しないこと.
+     * @param src 連続した DER. heap, direct, mapped どれでも
+     * @return 入力の順
+     */
+    public static Stream<ASN1Object> stream(ByteBuffer src) {
+        return StreamSupport.stream(new ASN1Spliterator(src), false);
+    }
+
+    /**
+     * 連続した DER を1つずつデコードする Stream.
+     * @param src 連続した DER
+     * @return 入力の順
+     */
+    public static Stream<ASN1Object> stream(byte[] src) {
+        return stream(ByteBuffer.wrap(src));
+    }
+
+    /**
+     * 連続した DER を読みながら1つずつデコードする Stream.
+     * 分割はできない. in は閉じない.
+     * @param in 連続した DER
+     * @return 入力の順
+     */
+    public static Stream<ASN1Object> stream(InputStream in) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(in), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * 連続した DER を読みながら1つずつデコードする.
+     * 読み込みの IOException、最上位の終端 (00 00) は UncheckedIOException になる.
+     * @param in 連続した DER. 閉じない
+     * @return 入力の順
+     */
+    public static Iterator<ASN1Object> iterator(InputStream in) {
+        return new ASN1Spliterator.StreamIterator(in);
+    }
+
+    /**
+     * 連続した DER または PEM のファイルを並列にデコードする.
+     * ファイルはメモリマップする. ForkJoinPool.commonPool を使う.
+     * @param file DER または PEM (CA bundle など)
+     * @return 入力の順
+     * @throws IOException
+     */
+    public static List<ASN1Object> toASN1List(Path file) throws IOException {
+        return ASN1BulkDecoder.decode(file, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 連続した DER または PEM のファイルを並列にデコードする.
+     * @param file DER または PEM
+     * @param pool 並列に使う
+     * @return 入力の順
+     * @throws IOException
+     */
+    public static List<ASN1Object> toASN1List(Path file, ForkJoinPool pool) throws IOException {
+        return ASN1BulkDecoder.decode(file, pool);
+    }
+
+    /**
+     * 連続した DER または PEM を並列にデコードする.
+     * 先頭が -----BEGIN なら PEM として扱う.
+     * DER の src は複製せずに参照するので変更しないこと.
+     * @param src DER または PEM
+     * @param pool 並列に使う
+     * @return 入力の順
+     * @throws IOException
+     */
+    public static List<ASN1Object> toASN1List(ByteBuffer src, ForkJoinPool pool) throws IOException {
+        return ASN1BulkDecoder.decode(src, pool);
     }
 
 }
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import net.siisise.iso.asn1.tag.ASN1String;
+import net.siisise.iso.asn1.tag.BITSTRING;
+import net.siisise.iso.asn1.tag.BOOLEAN;
+import net.siisise.iso.asn1.tag.INTEGER;
+import net.siisise.iso.asn1.tag.NULL;
+import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
+import net.siisise.iso.asn1.tag.OCTETSTRING;
+import net.siisise.iso.asn1.tag.SEQUENCE;
+
+/**
+ * RFC 3641 GSER 読み込み.
+ * parser.ASN1GSER3641Reg の規則を手で展開した再帰下降. 先頭1文字で規則を選ぶので戻らない.
+ * GSERWriter の形式のほか、NamedValue (identifier msp Value) は名前を読み捨てて値だけ使う.
+ * スキーマが必要な EnumeratedValue, RealValue などは読めない.
+ * @see GSERWriter
+ */
+public class GSERReader {
+
+    /**
+     * identifier → 汎用タグ
+     */
+    private static final Map<String, ASN1> TYPES = new HashMap<>();
+
+    static {
+        for (ASN1 t : ASN1.values()) {
+            if (t != ASN1.拡張) {
+                TYPES.put(GSERWriter.identifier(t.id), t);
+            }
+        }
+    }
+
+    private final CharSequence src;
+    private int offset;
+
+    /**
+     * @param src GSER
+     */
+    public GSERReader(CharSequence src) {
+        this.src = src;
+    }
+
+    /**
+     * 値1つ.
+     * 後ろに残りがあってもよい.
+     * @return ASN.1
+     * @throws IllegalArgumentException 形式が違う
+     */
+    public ASN1Object read() {
+        sp();
+        return value();
+    }
+
+    /**
+     * 読んだ位置
+     * @return 先頭からの文字数
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Value
+     */
+    private ASN1Object value() {
+        char ch = peek();
+        switch (ch) {
+            case '{':
+                return components(new SEQUENCE());
+            case '"':
+                ASN1String utf8 = new ASN1String(ASN1.UTF8String);
+                utf8.setValue(string());
+                return utf8;
+            case '\'':
+                return bhstring();
+            case 'T':
+                expect("TRUE");
+                return bool(true);
+            case 'F':
+                expect("FALSE");
+                return bool(false);
+            case 'N':
+                expect("NULL");
+                return new NULL();
+            case '-':
+                offset++;
+                return integer(true);
+            default:
+                if (ch >= '0' && ch <= '9') {
+                    return number();
+                } else if (ch >= 'a' && ch <= 'z') {
+                    return identified();
+                }
+                throw error("unexpected " + ch);
+        }
+    }
+
+    /**
+     * IdentifiedChoiceValue (identifier ":" Value) または NamedValue (identifier msp Value)
+     */
+    private ASN1Object identified() {
+        String id = identifier();
+        if (peek() == ' ') {
+            sp();
+            return value();
+        }
+        expect(":");
+        ASN1 t = TYPES.get(id);
+        if (t != null) {
+            return typed(t.id, t);
+        }
+        int h = id.lastIndexOf('-');
+        ASN1Cls cls = h < 0 ? null : tagClass(id.substring(0, h));
+        if (cls == null) {
+            throw error("unknown identifier " + id);
+        }
+        BigInteger tag = new BigInteger(id.substring(h + 1));
+        if (cls == ASN1Cls.汎用) {
+            return typed(tag.intValue(), null);
+        }
+        ASN1Object obj;
+        if (peek() == '{') {
+            obj = components(new ASN1Struct(cls, tag));
+        } else {
+            obj = ASN1Decoder.newObject(cls, false, tag.bitLength() < 64 ? tag.longValue() : -1, tag, 0);
+            obj.decodeBody(hstring());
+        }
+        return obj;
+    }
+
+    /**
+     * 型名付きの値
+     */
+    private ASN1Object typed(int id, ASN1 t) {
+        ASN1Object obj;
+        char ch = peek();
+        if (ch == '{') {
+            obj = components(t == ASN1.SET || t == ASN1.SEQUENCE ? (ASN1Struct) ASN1Decoder.decodeTag(id) : new ASN1Struct(ASN1Cls.汎用, id));
+        } else {
+            obj = ASN1Decoder.decodeTag(id);
+            if (obj == null) {
+                throw error("unsupported type " + id);
+            }
+            if (ch == '"' && obj instanceof ASN1String) {
+                ((ASN1String) obj).setValue(string());
+            } else if (ch == '\'') {
+                obj.decodeBody(hstring());
+            } else {
+                expect("NULL");
+            }
+        }
+        return obj;
+    }
+
+    /**
+     * SequenceOfValue / ComponentList
+     */
+    private ASN1Struct components(ASN1Struct struct) {
+        expect("{");
+        sp();
+        if (peek() != '}') {
+            while (true) {
+                struct.add(value());
+                sp();
+                if (peek() != ',') {
+                    break;
+                }
+                offset++;
+                sp();
+            }
+        }
+        expect("}");
+        return struct;
+    }
+
+    /**
+     * numeric-oid または IntegerValue
+     */
+    private ASN1Object number() {
+        int start = offset;
+        digits();
+        if (offset < src.length() && src.charAt(offset) == '.') {
+            while (offset < src.length() && src.charAt(offset) == '.') {
+                offset++;
+                digits();
+            }
+            return new OBJECTIDENTIFIER(src.subSequence(start, offset).toString());
+        }
+        offset = start;
+        return integer(false);
+    }
+
+    private ASN1Object integer(boolean minus) {
+        int start = offset;
+        digits();
+        INTEGER val = new INTEGER();
+        BigInteger num;
+        if (offset - start < 19) {
+            long n = 0;
+            for (int i = start; i < offset; i++) {
+                n = n * 10 + (src.charAt(i) - '0');
+            }
+            num = BigInteger.valueOf(n);
+        } else {
+            num = new BigInteger(src.subSequence(start, offset).toString());
+        }
+        val.setValue(minus ? num.negate() : num);
+        return val;
+    }
+
+    private void digits() {
+        int start = offset;
+        while (offset < src.length() && src.charAt(offset) >= '0' && src.charAt(offset) <= '9') {
+            offset++;
+        }
+        if (start == offset) {
+            throw error("digit expected");
+        }
+    }
+
+    private static BOOLEAN bool(boolean b) {
+        BOOLEAN val = new BOOLEAN();
+        val.setValue(b);
+        return val;
+    }
+
+    /**
+     * hstring → OCTETSTRING, bstring → BITSTRING
+     */
+    private ASN1Object bhstring() {
+        int start = offset + 1;
+        int end = indexOf('\'', start);
+        if (end + 1 >= src.length()) {
+            throw error("hstring or bstring expected");
+        }
+        char type = src.charAt(end + 1);
+        if (type == 'H') {
+            OCTETSTRING val = new OCTETSTRING();
+            val.decodeBody(hstring());
+            return val;
+        } else if (type != 'B') {
+            throw error("hstring or bstring expected");
+        }
+        int bitlen = end - start;
+        byte[] body = new byte[1 + (bitlen + 7) / 8];
+        body[0] = (byte) ((-bitlen) & 0x7);
+        for (int i = 0; i < bitlen; i++) {
+            char ch = src.charAt(start + i);
+            if (ch == '1') {
+                body[1 + (i >> 3)] |= 0x80 >> (i & 7);
+            } else if (ch != '0') {
+                throw error("binary-digit expected");
+            }
+        }
+        offset = end + 2;
+        BITSTRING val = new BITSTRING();
+        val.decodeBody(body);
+        return val;
+    }
+
+    /**
+     * hstring
+     */
+    private byte[] hstring() {
+        expect("'");
+        int start = offset;
+        int end = indexOf('\'', start);
+        if ((end - start) % 2 != 0) {
+            throw error("odd hstring");
+        }
+        byte[] data = new byte[(end - start) / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((hex(src.charAt(start + i * 2)) << 4) | hex(src.charAt(start + i * 2 + 1)));
+        }
+        offset = end + 1;
+        expect("H");
+        return data;
+    }
+
+    private int hex(char ch) {
+        if (ch >= '0' && ch <= '9') {
+            return ch - '0';
+        } else if (ch >= 'A' && ch <= 'F') {
+            return ch - 'A' + 10;
+        }
+        throw error("hexadecimal-digit expected");
+    }
+
+    /**
+     * StringValue. dquote 2つで1つ
+     */
+    private String string() {
+        expect("\"");
+        StringBuilder sb = new StringBuilder();
+        int start = offset;
+        while (true) {
+            int end = indexOf('"', offset);
+            if (end + 1 < src.length() && src.charAt(end + 1) == '"') {
+                sb.append(src, start, end + 1);
+                offset = start = end + 2;
+            } else {
+                sb.append(src, start, end);
+                offset = end + 1;
+                return sb.toString();
+            }
+        }
+    }
+
+    /**
+     * identifier
+     */
+    private String identifier() {
+        int start = offset;
+        while (offset < src.length()) {
+            char ch = src.charAt(offset);
+            if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '-') {
+                offset++;
+            } else {
+                break;
+            }
+        }
+        return src.subSequence(start, offset).toString();
+    }
+
+    private static ASN1Cls tagClass(String name) {
+        switch (name) {
+            case "universal":
+                return ASN1Cls.汎用;
+            case "application":
+                return ASN1Cls.応用;
+            case "context":
+                return ASN1Cls.コンテキスト特定;
+            case "private":
+                return ASN1Cls.プライベート;
+            default:
+                return null;
+        }
+    }
+
+    private int indexOf(char ch, int from) {
+        for (int i = from; i < src.length(); i++) {
+            if (src.charAt(i) == ch) {
+                return i;
+            }
+        }
+        throw error(ch + " not found");
+    }
+
+    /**
+     * sp
+     */
+    private void sp() {
+        while (offset < src.length() && src.charAt(offset) == ' ') {
+            offset++;
+        }
+    }
+
+    private char peek() {
+        if (offset >= src.length()) {
+            throw error("unexpected end");
+        }
+        return src.charAt(offset);
+    }
+
+    private void expect(String str) {
+        int len = str.length();
+        if (offset + len > src.length() || !str.contentEquals(src.subSequence(offset, offset + len))) {
+            throw error(str + " expected");
+        }
+        offset += len;
+    }
+
+    private IllegalArgumentException error(String msg) {
+        return new IllegalArgumentException(msg + " at " + offset);
+    }
+}
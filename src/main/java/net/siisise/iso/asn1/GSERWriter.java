@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import net.siisise.iso.asn1.tag.ASN1String;
+import net.siisise.iso.asn1.tag.BITSTRING;
+import net.siisise.iso.asn1.tag.BOOLEAN;
+import net.siisise.iso.asn1.tag.INTEGER;
+import net.siisise.iso.asn1.tag.NULL;
+import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
+import net.siisise.iso.asn1.tag.OCTETSTRING;
+
+/**
+ * RFC 3641 GSER 出力.
+ * スキーマがないので SEQUENCE は SequenceOfValue の形 { a, b } で書く.
+ * 型が値だけで決まらないものは IdentifiedChoiceValue の形で型を付ける.
+ *
+ * set:{ ... } SET
+ * octetstring:{ ... } その他の汎用型の構造
+ * context-0:{ ... } タグ付きの構造
+ * context-0:'0A0B'H タグ付きのプリミティブ
+ * printablestring:"JP" UTF8String 以外の文字列
+ *
+ * INTEGER, BOOLEAN, NULL, OBJECT IDENTIFIER, UTF8String, OCTET STRING ('..'H), BIT STRING ('..'B) は型を付けない.
+ * 可変長かどうかは残らない.
+ * @see GSERReader
+ */
+public class GSERWriter {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Appendable out;
+
+    /**
+     * @param out 出力先
+     */
+    public GSERWriter(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * 1つ書く.
+     * @param obj ASN.1
+     * @throws IOException
+     */
+    public void write(ASN1Object obj) throws IOException {
+        ASN1Cls cls = obj.getASN1Cls();
+        if (cls != ASN1Cls.汎用) {
+            out.append(identifier(cls)).append('-').append(obj.getTag().toString()).append(':');
+            if (obj instanceof ASN1Struct) {
+                components((ASN1Struct) obj);
+            } else {
+                hstring(obj.encodeBody());
+            }
+            return;
+        }
+        int id = obj.getId();
+        if (obj instanceof ASN1Struct) {
+            if (id != ASN1.SEQUENCE.id) {
+                out.append(identifier(id)).append(':');
+            }
+            components((ASN1Struct) obj);
+        } else if (obj instanceof INTEGER) {
+            out.append(((INTEGER) obj).getValue().toString());
+        } else if (obj instanceof BOOLEAN) {
+            out.append(((BOOLEAN) obj).getValue() ? "TRUE" : "FALSE");
+        } else if (obj instanceof NULL) {
+            if (id != ASN1.NULL.id) {
+                out.append(identifier(id)).append(':');
+            }
+            out.append("NULL");
+        } else if (obj instanceof OBJECTIDENTIFIER) {
+            out.append(((OBJECTIDENTIFIER) obj).getValue());
+        } else if (obj instanceof ASN1String) {
+            if (id != ASN1.UTF8String.id) {
+                out.append(identifier(id)).append(':');
+            }
+            string(((ASN1String) obj).getValue());
+        } else if (obj instanceof BITSTRING) {
+            bstring(obj.encodeBody());
+        } else {
+            if (!(obj instanceof OCTETSTRING) || id != ASN1.OCTETSTRING.id) {
+                out.append(identifier(id)).append(':');
+            }
+            hstring(obj.encodeBody());
+        }
+    }
+
+    /**
+     * ComponentList / SequenceOfValue
+     */
+    private void components(ASN1Struct struct) throws IOException {
+        List<ASN1Object> list = struct.getValue();
+        if (list.isEmpty()) {
+            out.append("{ }");
+            return;
+        }
+        out.append("{ ");
+        for (int i = 0; i < list.size(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            write(list.get(i));
+        }
+        out.append(" }");
+    }
+
+    /**
+     * StringValue. dquote は2つ重ねる
+     */
+    private void string(String str) throws IOException {
+        out.append('"');
+        int s = 0;
+        int e;
+        while ((e = str.indexOf('"', s)) >= 0) {
+            out.append(str, s, e + 1).append('"');
+            s = e + 1;
+        }
+        out.append(str, s, str.length()).append('"');
+    }
+
+    private void hstring(byte[] data) throws IOException {
+        out.append('\'');
+        for (byte b : data) {
+            out.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+        }
+        out.append("'H");
+    }
+
+    /**
+     * bstring
+     * @param body 先頭は未使用ビット数
+     */
+    private void bstring(byte[] body) throws IOException {
+        long bitlen = (body.length - 1) * 8L - (body[0] & 0x7);
+        char[] bits = new char[(int) bitlen];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = (body[1 + (i >> 3)] & (0x80 >> (i & 7))) != 0 ? '1' : '0';
+        }
+        out.append('\'').append(new String(bits)).append("'B");
+    }
+
+    /**
+     * 型名を identifier にする.
+     * 小文字にして _ は - にする
+     * @param id 汎用タグ
+     * @return identifier
+     */
+    static String identifier(int id) {
+        ASN1 t = ASN1.valueOf(id);
+        if (t == null || t == ASN1.拡張) {
+            return "universal-" + id;
+        }
+        return t.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    static String identifier(ASN1Cls cls) {
+        switch (cls) {
+            case 応用:
+                return "application";
+            case コンテキスト特定:
+                return "context";
+            case プライベート:
+                return "private";
+            default:
+                return "universal";
+        }
+    }
+}
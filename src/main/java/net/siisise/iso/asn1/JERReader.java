@@ -0,0 +1,352 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import javax.json.JsonException;
+import javax.json.spi.JsonProvider;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import net.siisise.iso.asn1.tag.ASN1String;
+import net.siisise.iso.asn1.tag.BOOLEAN;
+import net.siisise.iso.asn1.tag.INTEGER;
+import net.siisise.iso.asn1.tag.NULL;
+import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
+
+/**
+ * JERWriter の形式の JSON を読む.
+ * JSON-P (javax.json.stream) の JsonParser のイベントを読む. JSON の木は作らず、
+ * オブジェクト1つ分の項目だけ持って ASN1Object にする.
+ * 項目の順は問わない. 項目の型、値が合わないものは IOException にする.
+ * JSON-P の実装 (org.glassfish:javax.json など) が実行時に必要. ないときは read が IOException になる.
+ */
+public class JERReader {
+
+    /**
+     * 最初に使うときに JSON-P の実装を探す
+     */
+    private static volatile JsonParserFactory factory;
+
+    private final Reader in;
+    private JsonParser parser;
+
+    /**
+     * @param in 入力. 閉じない
+     */
+    public JERReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * @return JSON-P の実装の JsonParserFactory
+     * @throws IOException 実装が見つからないとき
+     */
+    private static JsonParserFactory factory() throws IOException {
+        JsonParserFactory f = factory;
+        if (f == null) {
+            try {
+                f = JsonProvider.provider().createParserFactory(null);
+            } catch (JsonException e) {
+                throw new IOException("JSON-P provider not found", e);
+            }
+            factory = f;
+        }
+        return f;
+    }
+
+    /**
+     * 1つ読む.
+     * @return ASN.1
+     * @throws IOException 形式が違うときも
+     */
+    public ASN1Object read() throws IOException {
+        if (parser == null) {
+            parser = factory().createParser(in);
+        }
+        try {
+            if (!parser.hasNext()) {
+                throw new EOFException();
+            }
+            if (parser.next() != JsonParser.Event.START_OBJECT) {
+                throw new IOException("expected object");
+            }
+            return object();
+        } catch (JsonException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * { の次から } まで
+     */
+    private ASN1Object object() throws IOException {
+        String type = null;
+        ASN1Cls cls = ASN1Cls.コンテキスト特定;
+        BigInteger tag = null;
+        boolean struct = false;
+        boolean inefinite = false;
+        boolean hasValue = false;
+        Object value = null;
+        List<ASN1Object> children = null;
+        long length = -1;
+        JsonParser.Event e;
+        while ((e = parser.next()) != JsonParser.Event.END_OBJECT) {
+            String key = parser.getString();
+            e = parser.next();
+            switch (key) {
+                case "type":
+                    type = string(e, key);
+                    break;
+                case "class":
+                    cls = ASN1Cls.valueOf(integer(e, key, 3).intValue());
+                    break;
+                case "tag":
+                    tag = integer(e, key, -1);
+                    break;
+                case "struct":
+                    struct = bool(e, key);
+                    break;
+                case "inefinite":
+                    inefinite = bool(e, key);
+                    break;
+                case "length":
+                    length = integer(e, key, Integer.MAX_VALUE).longValue();
+                    break;
+                case "value":
+                    hasValue = true;
+                    if (e == JsonParser.Event.START_ARRAY) {
+                        children = array();
+                    } else {
+                        value = value(e);
+                    }
+                    break;
+                default:
+                    skip(e); // 知らない項目は読み捨てる
+            }
+        }
+        if (type == null) {
+            throw new IOException("type not found");
+        }
+        if (!hasValue) {
+            throw new IOException("value of " + type + " not found");
+        }
+        ASN1Object obj = create(type, cls, tag, struct);
+        if (obj instanceof ASN1Struct) {
+            if (children == null) {
+                throw new IOException("value of " + type + " must be array");
+            }
+            ASN1Struct s = (ASN1Struct) obj;
+            s.inefinite = inefinite;
+            for (ASN1Object o : children) {
+                s.add(o);
+            }
+            return obj;
+        }
+        if (children != null) {
+            throw new IOException("value of " + type + " must not be array");
+        }
+        try {
+            if (obj instanceof BOOLEAN) {
+                ((BOOLEAN) obj).setValue(cast(value, Boolean.class, type));
+            } else if (obj instanceof INTEGER) {
+                ((INTEGER) obj).setValue(cast(value, BigInteger.class, type));
+            } else if (obj instanceof NULL) {
+                if (value != null) {
+                    throw new IOException("value of NULL must be null");
+                }
+            } else if (obj instanceof OBJECTIDENTIFIER) {
+                ((OBJECTIDENTIFIER) obj).setValue(cast(value, String.class, type));
+            } else if (obj instanceof ASN1String) {
+                ((ASN1String) obj).setValue(cast(value, String.class, type));
+            } else {
+                byte[] data = hex(cast(value, String.class, type));
+                if (length >= 0) { // BITSTRING 未使用ビット数を付ける
+                    if (length > data.length * 8L || length <= data.length * 8L - 8) {
+                        throw new IOException("BITSTRING length " + length + " does not match value");
+                    }
+                    byte[] body = new byte[data.length + 1];
+                    body[0] = (byte) ((-length) & 0x7);
+                    System.arraycopy(data, 0, body, 1, data.length);
+                    data = body;
+                }
+                obj.decodeBody(data);
+            }
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            throw new IOException("invalid value of " + type, ex);
+        }
+        return obj;
+    }
+
+    /**
+     * 型に合わせた箱
+     */
+    private static ASN1Object create(String type, ASN1Cls cls, BigInteger tag, boolean struct) throws IOException {
+        if ("struct".equals(type) || "primitive".equals(type)) {
+            if (tag == null) {
+                throw new IOException("tag of " + type + " not found");
+            }
+            if ("struct".equals(type)) {
+                return new ASN1Struct(cls, tag);
+            }
+            try {
+                return ASN1Decoder.newObject(cls, false, tag.bitLength() < 64 ? tag.longValue() : -1, tag, 0);
+            } catch (UnsupportedOperationException e) {
+                throw new IOException("unsupported primitive " + cls + " " + tag, e);
+            }
+        }
+        ASN1 t;
+        try {
+            t = ASN1.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("unknown type " + type, e);
+        }
+        if (t == ASN1.SEQUENCE || t == ASN1.SET) {
+            return ASN1Decoder.decodeTag(t.id);
+        } else if (struct) {
+            return new ASN1Struct(ASN1Cls.汎用, t.id);
+        }
+        ASN1Object obj = ASN1Decoder.decodeTag(t.id);
+        if (obj == null) {
+            throw new IOException("unsupported type " + type);
+        }
+        return obj;
+    }
+
+    /**
+     * [ の次から ] まで
+     */
+    private List<ASN1Object> array() throws IOException {
+        List<ASN1Object> list = new ArrayList<>();
+        JsonParser.Event e;
+        while ((e = parser.next()) != JsonParser.Event.END_ARRAY) {
+            if (e != JsonParser.Event.START_OBJECT) {
+                throw new IOException("array element must be object");
+            }
+            list.add(object());
+        }
+        return list;
+    }
+
+    /**
+     * 配列以外の値
+     * @return String, BigInteger, Boolean または null
+     */
+    private Object value(JsonParser.Event e) throws IOException {
+        switch (e) {
+            case VALUE_STRING:
+                return parser.getString();
+            case VALUE_NUMBER:
+                return integer(e, "value", -1);
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new IOException("unexpected " + e + " in value");
+        }
+    }
+
+    private String string(JsonParser.Event e, String key) throws IOException {
+        if (e != JsonParser.Event.VALUE_STRING) {
+            throw new IOException(key + " must be string");
+        }
+        return parser.getString();
+    }
+
+    private static boolean bool(JsonParser.Event e, String key) throws IOException {
+        if (e == JsonParser.Event.VALUE_TRUE) {
+            return true;
+        } else if (e == JsonParser.Event.VALUE_FALSE) {
+            return false;
+        }
+        throw new IOException(key + " must be boolean");
+    }
+
+    /**
+     * 整数のみ
+     * "value" 以外は負の数を認めない.
+     * @param max 上限. -1 は上限なし
+     */
+    private BigInteger integer(JsonParser.Event e, String key, int max) throws IOException {
+        if (e != JsonParser.Event.VALUE_NUMBER) {
+            throw new IOException(key + " must be number");
+        }
+        BigInteger num;
+        try {
+            num = parser.getBigDecimal().toBigIntegerExact();
+        } catch (ArithmeticException ex) {
+            throw new IOException(key + " must be integer", ex);
+        }
+        if (!"value".equals(key) && (num.signum() < 0 || (max >= 0 && num.compareTo(BigInteger.valueOf(max)) > 0))) {
+            throw new IOException(key + " out of range " + num);
+        }
+        return num;
+    }
+
+    private static <T> T cast(Object value, Class<T> type, String name) throws IOException {
+        if (!type.isInstance(value)) {
+            throw new IOException("value of " + name + " must be " + type.getSimpleName());
+        }
+        return type.cast(value);
+    }
+
+    /**
+     * 値を1つ読み捨てる
+     */
+    private void skip(JsonParser.Event e) {
+        int depth = 0;
+        while (true) {
+            if (e == JsonParser.Event.START_OBJECT || e == JsonParser.Event.START_ARRAY) {
+                depth++;
+            } else if (e == JsonParser.Event.END_OBJECT || e == JsonParser.Event.END_ARRAY) {
+                depth--;
+            }
+            if (depth == 0) {
+                return;
+            }
+            e = parser.next();
+        }
+    }
+
+    private static byte[] hex(String str) throws IOException {
+        if (str.length() % 2 != 0) {
+            throw new IOException("odd hex length");
+        }
+        byte[] data = new byte[str.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((digit(str.charAt(i * 2)) << 4) | digit(str.charAt(i * 2 + 1)));
+        }
+        return data;
+    }
+
+    private static int digit(int ch) throws IOException {
+        int d = Character.digit(ch, 16);
+        if (d < 0) {
+            throw new IOException("not hex " + (char) ch);
+        }
+        return d;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.List;
+import javax.json.JsonException;
+import javax.json.spi.JsonProvider;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import net.siisise.iso.asn1.tag.ASN1String;
+import net.siisise.iso.asn1.tag.BITSTRING;
+import net.siisise.iso.asn1.tag.BOOLEAN;
+import net.siisise.iso.asn1.tag.INTEGER;
+import net.siisise.iso.asn1.tag.NULL;
+import net.siisise.iso.asn1.tag.OBJECTIDENTIFIER;
+
+/**
+ * JSON 出力.
+ * X.697 JER はスキーマ (型定義) が必要なので、ここでは toXML と同じく型を自己記述する形にする.
+ * 値の表現は JER に合わせる.
+ *
+ * {"type":"SEQUENCE","value":[ ... ]}
+ * {"type":"struct","class":2,"tag":0,"value":[ ... ]}
+ * {"type":"INTEGER","value":5}
+ * {"type":"BOOLEAN","value":true}
+ * {"type":"NULL","value":null}
+ * {"type":"OBJECTIDENTIFIER","value":"1.2.840.113549"}
+ * {"type":"UTF8String","value":"text"}
+ * {"type":"OCTETSTRING","value":"0a0b"} 16進
+ * {"type":"BITSTRING","value":"a0","length":3}
+ * {"type":"primitive","class":2,"tag":0,"value":"0a0b"} その他
+ *
+ * 汎用型の構造は "struct":true, 可変長は "inefinite":true が付く.
+ * 名前のない汎用タグ (31以上) は "class":0 の struct, primitive で書く.
+ * JSON-P (javax.json.stream) の JsonGenerator で木をたどりながら書くので JSON 全体は持たない.
+ * JSON-P の実装 (org.glassfish:javax.json など) が実行時に必要. ないときは write が IOException になる.
+ * flush は write 1回につき最後に1回だけ.
+ */
+public class JERWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 最初に使うときに JSON-P の実装を探す
+     */
+    private static volatile JsonGeneratorFactory factory;
+
+    private final Writer out;
+
+    /**
+     * @param out 出力先. 閉じない
+     */
+    public JERWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * 1つ書く.
+     * @param obj ASN.1
+     * @throws IOException
+     */
+    public void write(ASN1Object obj) throws IOException {
+        JsonGenerator gen = factory().createGenerator(out);
+        try {
+            write(gen, obj);
+            gen.flush();
+        } catch (JsonException e) {
+            throw io(e);
+        }
+    }
+
+    /**
+     * ASN1StreamReader の次の要素を1つ、木を作らずに書く.
+     * @param in DER
+     * @throws IOException
+     */
+    public void write(ASN1StreamReader in) throws IOException {
+        JsonGenerator gen = factory().createGenerator(out);
+        try {
+            int depth = in.getDepth();
+            int event = in.next();
+            while (true) {
+                switch (event) {
+                    case ASN1StreamReader.START_CONSTRUCTED:
+                        start(gen, in.getASN1Cls(), in.getTag(), true, in.getLength() < 0);
+                        break;
+                    case ASN1StreamReader.PRIMITIVE:
+                        primitive(gen, in.readObject());
+                        break;
+                    case ASN1StreamReader.END_CONSTRUCTED:
+                        gen.writeEnd().writeEnd();
+                        break;
+                    default:
+                        throw new EOFException();
+                }
+                if (in.getDepth() <= depth) {
+                    gen.flush();
+                    return;
+                }
+                event = in.next();
+            }
+        } catch (JsonException e) {
+            throw io(e);
+        }
+    }
+
+    /**
+     * @return JSON-P の実装の JsonGeneratorFactory
+     * @throws IOException 実装が見つからないとき
+     */
+    private static JsonGeneratorFactory factory() throws IOException {
+        JsonGeneratorFactory f = factory;
+        if (f == null) {
+            try {
+                f = JsonProvider.provider().createGeneratorFactory(null);
+            } catch (JsonException e) {
+                throw new IOException("JSON-P provider not found", e);
+            }
+            factory = f;
+        }
+        return f;
+    }
+
+    private void write(JsonGenerator gen, ASN1Object obj) {
+        if (obj instanceof ASN1Struct) {
+            start(gen, obj.getASN1Cls(), obj.getTag(), obj.isStruct(), obj.inefinite);
+            List<ASN1Object> list = ((ASN1Struct) obj).getValue();
+            for (ASN1Object o : list) {
+                write(gen, o);
+            }
+            gen.writeEnd().writeEnd();
+        } else {
+            primitive(gen, obj);
+        }
+    }
+
+    /**
+     * 構造の開始. value の配列まで開く
+     */
+    private static void start(JsonGenerator gen, ASN1Cls cls, BigInteger tag, boolean struct, boolean inefinite) {
+        gen.writeStartObject();
+        ASN1 n2 = universal(cls, tag);
+        if (n2 != null) {
+            gen.write("type", n2.name());
+            if (n2 != ASN1.SEQUENCE && n2 != ASN1.SET) {
+                gen.write("struct", struct);
+            }
+        } else {
+            gen.write("type", "struct");
+            gen.write("class", cls.cls);
+            gen.write("tag", tag);
+        }
+        if (inefinite) {
+            gen.write("inefinite", true);
+        }
+        gen.writeStartArray("value");
+    }
+
+    private static void primitive(JsonGenerator gen, ASN1Object obj) {
+        gen.writeStartObject();
+        ASN1 n2 = universal(obj.getASN1Cls(), obj.getTag());
+        if (n2 == null) {
+            gen.write("type", "primitive");
+            gen.write("class", obj.getASN1Class());
+            gen.write("tag", obj.getTag());
+            gen.write("value", hex(obj.encodeBody(), 0));
+            gen.writeEnd();
+            return;
+        }
+        gen.write("type", n2.name());
+        if (obj instanceof BOOLEAN) {
+            gen.write("value", ((BOOLEAN) obj).getValue());
+        } else if (obj instanceof INTEGER) {
+            gen.write("value", ((INTEGER) obj).getValue());
+        } else if (obj instanceof NULL) {
+            gen.writeNull("value");
+        } else if (obj instanceof OBJECTIDENTIFIER) {
+            gen.write("value", ((OBJECTIDENTIFIER) obj).getValue());
+        } else if (obj instanceof ASN1String) {
+            gen.write("value", ((ASN1String) obj).getValue());
+        } else if (obj instanceof BITSTRING) {
+            byte[] body = obj.encodeBody();
+            gen.write("value", hex(body, 1));
+            gen.write("length", (body.length - 1) * 8L - (body[0] & 0x7));
+        } else {
+            gen.write("value", hex(obj.encodeBody(), 0));
+        }
+        gen.writeEnd();
+    }
+
+    /**
+     * 名前で書ける汎用型
+     * @return 汎用でないとき、名前のないタグのときは null
+     */
+    private static ASN1 universal(ASN1Cls cls, BigInteger tag) {
+        if (cls != ASN1Cls.汎用 || tag.bitLength() >= 31) {
+            return null;
+        }
+        ASN1 n2 = ASN1.valueOf(tag.intValue());
+        return n2 == ASN1.拡張 ? null : n2;
+    }
+
+    private static String hex(byte[] data, int offset) {
+        char[] str = new char[(data.length - offset) * 2];
+        for (int i = offset, j = 0; i < data.length; i++) {
+            str[j++] = HEX[(data[i] >> 4) & 0xf];
+            str[j++] = HEX[data[i] & 0xf];
+        }
+        return new String(str);
+    }
+
+    /**
+     * Writer の例外は JsonException に包まれてくる
+     */
+    private static IOException io(JsonException e) {
+        if (e.getCause() instanceof IOException) {
+            return (IOException) e.getCause();
+        }
+        return new IOException(e.getMessage(), e);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * toXML の形式の XML から木を作らずに DER を書く.
+ * 構造の長さは中身を読むまでわからないので XML を2回読む.
+ * 1回目で構造の長さを出現順に求め、2回目で書く.
+ * 持つのは開いている構造の分と、文書中の構造1つにつき長さ1つ (int).
+ * プリミティブは1つずつ ASN1Util.toASN1(Element) で作る.
+ *
+ * 制限: 汎用の SET (SET OF) は DER の順に並べ替えるため、2回目に子をすべて符号化してメモリに持つ.
+ * 並べる順は子の符号がそろうまで決まらず、XML は前からしか読めないためで、
+ * 大きな SET OF があるとメモリはその SET の符号化後の大きさに比例する (入れ子の深さでは収まらない).
+ * SET の中の SET も同時に持つ. 巨大な SET OF を含む文書は木を作る toASN1(Element) と大差ない.
+ */
+class XMLDERConverter {
+
+    /**
+     * 読み直せる入力
+     */
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final Source src;
+    private final Document doc = ASN1Util.newDocument();
+    /**
+     * 構造の値の長さ. 開始タグの順
+     */
+    private int[] lengths = new int[64];
+    private int count;
+
+    XMLDERConverter(Source src) {
+        this.src = src;
+    }
+
+    /**
+     * 変換する.
+     * @param out 出力先. 閉じない
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    void convert(OutputStream out) throws IOException, XMLStreamException {
+        count = 0;
+        walk(null);
+        count = 0;
+        walk(out);
+    }
+
+    /**
+     *
+     * @param out null のときは長さのみ求める
+     */
+    private void walk(OutputStream out) throws IOException, XMLStreamException {
+        try (InputStream in = src.open()) {
+            XMLStreamReader xml = FACTORY.createXMLStreamReader(in);
+            try {
+                while (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                }
+                element(xml, out);
+            } finally {
+                xml.close();
+            }
+        }
+    }
+
+    /**
+     * 要素1つ. 開始タグの位置から終了タグまで読む
+     * @return 符号化した長さ
+     */
+    private int element(XMLStreamReader xml, OutputStream out) throws IOException, XMLStreamException {
+        ASN1Struct struct = struct(xml);
+        if (struct == null) {
+            ASN1Object obj = ASN1Util.toASN1(primitive(xml));
+            if (out == null) {
+                return obj.encodedLength();
+            }
+            obj.encodeAll(out);
+            return 0;
+        }
+        int index = count++;
+        if (out == null) {
+            if (index == lengths.length) {
+                lengths = Arrays.copyOf(lengths, index * 2);
+            }
+            int len = 0;
+            while (next(xml)) {
+                len += element(xml, out);
+            }
+            lengths[index] = len;
+            return struct.headerLength(len) + len + (struct.inefinite ? 2 : 0);
+        }
+        struct.writeHeader(out, lengths[index]);
+        if (struct.isDERSet()) {
+            writeSet(xml, out);
+        } else {
+            while (next(xml)) {
+                element(xml, out);
+            }
+        }
+        if (struct.inefinite) {
+            out.write(0);
+            out.write(0);
+        }
+        return 0;
+    }
+
+    /**
+     * SET の子を符号化して ASN1Struct.compareSet の順に並べてから書く.
+     * 子の符号はすべてメモリに持つ.
+     * 子の中の構造も出現順に読むので lengths の順は変わらない.
+     */
+    private void writeSet(XMLStreamReader xml, OutputStream out) throws IOException, XMLStreamException {
+        byte[][] children = new byte[8][];
+        int size = 0;
+        while (next(xml)) {
+            ByteArrayOutputStream child = new ByteArrayOutputStream();
+            element(xml, child);
+            if (size == children.length) {
+                children = Arrays.copyOf(children, size * 2);
+            }
+            children[size++] = child.toByteArray();
+        }
+        Arrays.sort(children, 0, size, ASN1Struct::compareSet);
+        for (int i = 0; i < size; i++) {
+            out.write(children[i]);
+        }
+    }
+
+    /**
+     * 次の子要素へ
+     * @return 子要素の開始, false は親の終了
+     */
+    private static boolean next(XMLStreamReader xml) throws XMLStreamException {
+        while (true) {
+            switch (xml.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    return true;
+                case XMLStreamConstants.END_ELEMENT:
+                    return false;
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("unexpected end of document");
+                default:
+            }
+        }
+    }
+
+    /**
+     * ASN1Util.toASN1(Element) と同じ判定で構造の箱を作る
+     * @return 構造でなければ null
+     */
+    private static ASN1Struct struct(XMLStreamReader xml) {
+        String name = xml.getLocalName();
+        ASN1Struct struct;
+        if ("struct".equals(name)) {
+            String cl = xml.getAttributeValue(null, "class");
+            ASN1Cls cls = cl == null || cl.isEmpty() ? ASN1Cls.コンテキスト特定 : ASN1Cls.valueOf(Integer.parseInt(cl));
+            struct = new ASN1Struct(cls, new BigInteger(xml.getAttributeValue(null, "tag")));
+        } else {
+            ASN1 t = ASN1.valueOf(name);
+            if (t == ASN1.SEQUENCE || t == ASN1.SET || Boolean.parseBoolean(xml.getAttributeValue(null, "struct"))) {
+                struct = new ASN1Struct(ASN1Cls.汎用, t.id);
+            } else {
+                return null;
+            }
+        }
+        struct.inefinite = Boolean.parseBoolean(xml.getAttributeValue(null, "inefinite"));
+        return struct;
+    }
+
+    /**
+     * プリミティブ1つ分の要素
+     */
+    private Element primitive(XMLStreamReader xml) throws XMLStreamException {
+        Element ele = doc.createElement(xml.getLocalName());
+        for (int i = 0; i < xml.getAttributeCount(); i++) {
+            ele.setAttribute(xml.getAttributeLocalName(i), xml.getAttributeValue(i));
+        }
+        ele.setTextContent(xml.getElementText());
+        return ele;
+    }
+}
@@ -28,7 +28,7 @@ public class ASN1GSER3641Reg {
 
     static final ABNF alphanumeric = REG.rule("alphanumeric", uppercase.or1(lowercase, decimalDigit));
     static final ABNF identifier = REG.rule("identifier", lowercase.pl(alphanumeric.x(), hyphen.pl(alphanumeric.ix()).x()));
-    static final ABNF StringValue = REG.rule("StringValue", dquote.pl(SafeUTF8Character, dquote));
+    static final ABNF StringValue = REG.rule("StringValue", dquote.pl(SafeUTF8Character.x(), dquote));
     static final ABNF GeneralizedTimeValue = REG.rule("GeneralizedTimeValue", StringValue);
     static final ABNF UTCTimeValue = REG.rule("UTCTimeValue", StringValue);
     static final ABNF ObjectDescriptorValue = REG.rule("ObjectDescriptorValue", StringValue);
@@ -57,8 +57,8 @@ public class ASN1GSER3641Reg {
     static final ABNF ComponentList = REG.rule("ComponentList", ABNF.bin('{').pl(sp.pl(NamedValue, ABNF.bin(',').pl(sp, NamedValue).x()).c(), sp, ABNF.bin('}')));
     static final ABNF SequenceValue = REG.rule("SequenceValue", ComponentList);
     static final ABNF SetValue = REG.rule("SetValue", ComponentList);
-    static final ABNF SequenceOfValue = REG.rule("SequenceOfValue", ABNF.bin('{').pl(sp.pl(REG.ref("Value"), ABNF.bin('.').pl(sp, REG.ref("Value")).x()).c(), sp, ABNF.bin('}')));
-    static final ABNF SetOfValue = REG.rule("SetOfValue", ABNF.bin('{').pl(sp.pl(REG.ref("Value"), ABNF.bin('.').pl(sp, REG.ref("Value")).x()).c(), sp, ABNF.bin('}')));
+    static final ABNF SequenceOfValue = REG.rule("SequenceOfValue", ABNF.bin('{').pl(sp.pl(REG.ref("Value"), ABNF.bin(',').pl(sp, REG.ref("Value")).x()).c(), sp, ABNF.bin('}')));
+    static final ABNF SetOfValue = REG.rule("SetOfValue", ABNF.bin('{').pl(sp.pl(REG.ref("Value"), ABNF.bin(',').pl(sp, REG.ref("Value")).x()).c(), sp, ABNF.bin('}')));
     static final ABNF CharacterStringValue = REG.rule("CharacterStringValue", SequenceValue);
     static final ABNF EmbeddedPDVValue = REG.rule("EmbeddedPDVValue", SequenceValue);
     static final ABNF ExternalValue = REG.rule("ExternalValue", SequenceValue);
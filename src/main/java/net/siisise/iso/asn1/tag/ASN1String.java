@@ -16,6 +16,8 @@
 package net.siisise.iso.asn1.tag;
 
 import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import net.siisise.iso.asn1.ASN1;
 import net.siisise.iso.asn1.ASN1Object;
 import net.siisise.iso.asn1.ASN1Tag;
@@ -36,6 +38,7 @@ public class ASN1String extends ASN1Object<String> implements ASN1Tag {
 
     @Override
     public void decodeBody( byte[] val ) {
+        checkFrozen();
 //        data = (byte[]) val.clone();
         switch ( ASN1.valueOf(getId()) ) {
         case UTF8String:
@@ -59,7 +62,6 @@ public class ASN1String extends ASN1Object<String> implements ASN1Tag {
         default:
             throw new UnsupportedOperationException( "Unknows String " + getId() + " yet.");
         }
-        System.out.println(" " + string);
     }
 
     @Override
@@ -86,6 +88,53 @@ public class ASN1String extends ASN1Object<String> implements ASN1Tag {
 //        return data;
     }
 
+    /**
+     * encodeBody() せずに長さを数える.
+     * 符号化できない文字は getBytes と同じく置換文字1つ分で数える
+     * @return 値のバイト長
+     */
+    @Override
+    protected int bodyLength() {
+        switch ( getId() ) {
+        case UTF8String:
+            return utf8Length(string);
+        case IA5String:
+        case PrintableString:
+        case CharacterString:
+        case GeneralString:
+        case GraphicString:
+        case NumericString:
+        case TeletexString:
+        case VideotexString:
+        case VisibleString:
+        case UTCTime:
+            return string.codePointCount(0, string.length());
+        case BMPString:
+            return string.length() * 2;
+        }
+        throw new java.lang.UnsupportedOperationException(" ASN String ID:" + Integer.toHexString(getId()) );
+    }
+
+    private static int utf8Length( String str ) {
+        int len = 0;
+        for ( int i = 0; i < str.length(); i++ ) {
+            char ch = str.charAt(i);
+            if ( ch < 0x80 ) {
+                len++;
+            } else if ( ch < 0x800 ) {
+                len += 2;
+            } else if ( Character.isHighSurrogate(ch) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1)) ) {
+                len += 4;
+                i++;
+            } else if ( Character.isSurrogate(ch) ) {
+                len++; // '?'
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+
     @Override
     public Element encodeXML( Document doc ) {
         Element ele = doc.createElement( ASN1.valueOf(getId()).toString() );
@@ -93,8 +142,16 @@ public class ASN1String extends ASN1Object<String> implements ASN1Tag {
         return ele;
     }
 
+    @Override
+    public void encodeXML( XMLStreamWriter out ) throws XMLStreamException {
+        out.writeStartElement( ASN1.valueOf(getId()).toString() );
+        out.writeCharacters(string);
+        out.writeEndElement();
+    }
+
     @Override
     public void decodeXML( Element ele ) {
+        checkFrozen();
         string = ele.getTextContent();
     }
 
@@ -110,6 +167,7 @@ public class ASN1String extends ASN1Object<String> implements ASN1Tag {
 
     @Override
     public void setValue( String val ) {
+        checkFrozen();
         string = val;
     }
 }
@@ -15,6 +15,9 @@
  */
 package net.siisise.iso.asn1.tag;
 
+import java.nio.ByteBuffer;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import net.siisise.io.BASE64;
 import net.siisise.iso.asn1.ASN1;
 import net.siisise.iso.asn1.ASN1Object;
@@ -28,6 +31,10 @@ import org.w3c.dom.Element;
 public class BITSTRING extends ASN1Object<byte[]> implements ASN1Tag {
 
     private byte[] data;
+    /**
+     * デコード元の参照 (未使用ビット数を除く). 必要になるまで複製しない
+     */
+    private ByteBuffer src;
     /**
      * 全長ビット
      */
@@ -37,16 +44,59 @@ public class BITSTRING extends ASN1Object<byte[]> implements ASN1Tag {
         super(ASN1.BITSTRING);
     }
 
+    /**
+     * freeze 後は src を残し、毎回複製を返す
+     */
+    private byte[] data() {
+        if ( data == null && src != null ) {
+            byte[] d = new byte[src.remaining()];
+            src.duplicate().get(d);
+            if ( isFrozen() ) {
+                return d;
+            }
+            data = d;
+            src = null;
+        }
+        return data;
+    }
+
+    /**
+     * freeze 後は外に出すときに複製する
+     */
+    private byte[] copy() {
+        byte[] d = data();
+        return isFrozen() && d == data ? d.clone() : d;
+    }
+
     @Override
     public byte[] encodeBody() {
+        byte[] data = data();
         byte[] out = new byte[data.length + 1];
         out[0] = (byte) ((-(bitlen % 8)) & 0x7);
         System.arraycopy(data, 0, out, 1, data.length);
         return out;
     }
 
+    @Override
+    protected int bodyLength() {
+        return 1 + (src != null ? src.remaining() : data.length);
+    }
+
+    @Override
+    protected int encodeBody( byte[] dst, int offset ) {
+        dst[offset++] = (byte) ((-(bitlen % 8)) & 0x7);
+        if ( src != null ) {
+            int len = src.remaining();
+            src.duplicate().get(dst, offset, len);
+            return offset + len;
+        }
+        System.arraycopy(data, 0, dst, offset, data.length);
+        return offset + data.length;
+    }
+
     @Override
     public void decodeBody( byte[] data ) {
+        checkFrozen();
         int 未使用ビット数 = (int) data[0] & 0xff;
         data[0] = 0;
 
@@ -55,6 +105,20 @@ public class BITSTRING extends ASN1Object<byte[]> implements ASN1Tag {
             this.data = new byte[data.length - 1];
             System.arraycopy(data, 1, this.data, 0, data.length - 1);
         }
+        src = null;
+    }
+
+    /**
+     * 複製せずに参照だけ持つ.
+     * @param data 値
+     */
+    @Override
+    public void decodeBody( ByteBuffer data ) {
+        checkFrozen();
+        int 未使用ビット数 = data.get() & 0xff;
+        bitlen = data.remaining() * 8L - 未使用ビット数;
+        this.data = null;
+        src = data.slice();
     }
 
     @Override
@@ -62,15 +126,25 @@ public class BITSTRING extends ASN1Object<byte[]> implements ASN1Tag {
         Element ele = doc.createElement( ASN1.BITSTRING.name() );
         ele.setAttribute("bitlen", String.valueOf(bitlen));
         BASE64 b64 = new BASE64();
-        String val = b64.encode(data);
+        String val = b64.encode(data());
         ele.setTextContent(val);
         return ele;
     }
 
+    @Override
+    public void encodeXML( XMLStreamWriter out ) throws XMLStreamException {
+        out.writeStartElement( ASN1.BITSTRING.name() );
+        out.writeAttribute("bitlen", String.valueOf(bitlen));
+        out.writeCharacters(new BASE64().encode(data()));
+        out.writeEndElement();
+    }
+
     @Override
     public void decodeXML( Element element ) {
+        checkFrozen();
         bitlen = Long.parseLong(element.getAttribute("bitlen"));
         data = BASE64.decodeBase(element.getTextContent());
+        src = null;
     }
 
     /**
@@ -80,19 +154,34 @@ public class BITSTRING extends ASN1Object<byte[]> implements ASN1Tag {
      */
     public String toString() {
         BASE64 b64 = new BASE64();
-        return b64.encode(data);
+        return b64.encode(data());
     }
 
-    /** 未使用ビット数を考慮しない */
+    /**
+     * setValue などで渡された配列は複製してから持つ
+     * @return this
+     */
+    @Override
+    public BITSTRING freeze() {
+        if ( !isFrozen() && data != null ) {
+            data = data.clone();
+        }
+        super.freeze();
+        return this;
+    }
+
+    /** 未使用ビット数を考慮しない. freeze 後は複製を返す */
     @Override
     public byte[] getValue() {
-        return data;
+        return copy();
     }
 
     /** 未使用ビット数を考慮しない */
     @Override
     public void setValue( byte[] val ) {
+        checkFrozen();
         data = val;
+        src = null;
         bitlen = data.length * 8;
     }
 }
@@ -15,6 +15,8 @@
  */
 package net.siisise.iso.asn1.tag;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import net.siisise.iso.asn1.ASN1;
 import net.siisise.iso.asn1.ASN1Object;
 import net.siisise.iso.asn1.ASN1Tag;
@@ -37,8 +39,20 @@ public class BOOLEAN extends ASN1Object<Boolean> implements ASN1Tag {
         return new byte[]{ (byte) (val ? 0xff : 0) }; // CER/DER では true は 0xff
     }
 
+    @Override
+    protected int bodyLength() {
+        return 1;
+    }
+
+    @Override
+    protected int encodeBody( byte[] dst, int offset ) {
+        dst[offset] = (byte) (val ? 0xff : 0);
+        return offset + 1;
+    }
+
     @Override
     public void decodeBody( byte[] data ) {
+        checkFrozen();
         val = data[0] != 0;
     }
 
@@ -49,8 +63,16 @@ public class BOOLEAN extends ASN1Object<Boolean> implements ASN1Tag {
         return bool;
     }
 
+    @Override
+    public void encodeXML( XMLStreamWriter out ) throws XMLStreamException {
+        out.writeStartElement( ASN1.BOOLEAN.name() );
+        out.writeCharacters("" + val);
+        out.writeEndElement();
+    }
+
     @Override
     public void decodeXML( Element element ) {
+        checkFrozen();
         val = Boolean.parseBoolean(element.getTextContent());
     }
 
@@ -66,6 +88,7 @@ public class BOOLEAN extends ASN1Object<Boolean> implements ASN1Tag {
 
     @Override
     public void setValue( Boolean v ) {
+        checkFrozen();
         val = v;
     }
 }
@@ -16,6 +16,8 @@
 package net.siisise.iso.asn1.tag;
 
 import java.math.BigInteger;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import net.siisise.iso.asn1.ASN1;
 import net.siisise.iso.asn1.ASN1Object;
 import net.siisise.iso.asn1.ASN1Tag;
@@ -38,8 +40,17 @@ public class INTEGER extends ASN1Object<BigInteger> implements ASN1Tag {
         return val.toByteArray();
     }
 
+    /**
+     * toByteArray() と同じ長さ
+     */
+    @Override
+    protected int bodyLength() {
+        return val.bitLength() / 8 + 1;
+    }
+
     @Override
     public void decodeBody(byte[] data) {
+        checkFrozen();
         val = new BigInteger( data );
     }
 
@@ -50,8 +61,16 @@ public class INTEGER extends ASN1Object<BigInteger> implements ASN1Tag {
         return ele;
     }
 
+    @Override
+    public void encodeXML(XMLStreamWriter out) throws XMLStreamException {
+        out.writeStartElement( ASN1.INTEGER.name() );
+        out.writeCharacters(val.toString());
+        out.writeEndElement();
+    }
+
     @Override
     public void decodeXML(Element ele) {
+        checkFrozen();
         String txt = ele.getTextContent();
         val = new BigInteger(txt);
     }
@@ -68,6 +87,7 @@ public class INTEGER extends ASN1Object<BigInteger> implements ASN1Tag {
     
     @Override
     public void setValue( BigInteger v ) {
+        checkFrozen();
         val = v;
     }
 }
@@ -15,6 +15,8 @@
  */
 package net.siisise.iso.asn1.tag;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import net.siisise.iso.asn1.ASN1;
 import net.siisise.iso.asn1.ASN1Object;
 import net.siisise.iso.asn1.ASN1Tag;
@@ -39,8 +41,19 @@ public class NULL extends ASN1Object implements ASN1Tag {
         return new byte[0];
     }
 
+    @Override
+    protected int bodyLength() {
+        return 0;
+    }
+
+    @Override
+    protected int encodeBody(byte[] dst, int offset) {
+        return offset;
+    }
+
     @Override
     public void decodeBody(byte[] data) {
+        checkFrozen();
         if ( data.length != 0 ) {
             throw new java.lang.IllegalStateException();
         }
@@ -51,8 +64,14 @@ public class NULL extends ASN1Object implements ASN1Tag {
         return doc.createElement( ASN1.valueOf(this.getId()).name() );
     }
 
+    @Override
+    public void encodeXML(XMLStreamWriter out) throws XMLStreamException {
+        out.writeEmptyElement( ASN1.valueOf(this.getId()).name() );
+    }
+
     @Override
     public void decodeXML(Element element) {
+        checkFrozen();
     }
     
     @Override
@@ -67,6 +86,7 @@ public class NULL extends ASN1Object implements ASN1Tag {
 
     @Override
     public void setValue( Object val ) {
+        checkFrozen();
     }
     
 }
@@ -15,25 +15,17 @@
  */
 package net.siisise.iso.asn1.tag;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.math.BigInteger;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import net.siisise.iso.asn1.ASN1;
 import net.siisise.iso.asn1.ASN1Object;
 import net.siisise.iso.asn1.ASN1Tag;
-import net.siisise.xml.XElement;
-import net.siisise.xml.XMLIO;
+import net.siisise.iso.asn1.tag.OIDRegistry.OID;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
 
 /**
  * ITU-T Rec.X.690.
@@ -42,89 +34,10 @@ import org.xml.sax.SAXException;
  */
 public class OBJECTIDENTIFIER extends ASN1Object<String> implements ASN1Tag {
 
-    private List<String> list = new ArrayList<>();
-    private String identifier;
     /**
-     * 名前解決用
+     * 中身は共有する
      */
-    private static OID root = new OID();
-    
-    static class OID {
-        private String oid;
-        private String name;
-        private Class oidClass;
-        private Map<String,OID> map = new HashMap<>();
-
-        public String getName() {
-            return name;
-        }
-
-        public void setName( String name ) {
-            this.name = name;
-        }
-        
-        public Class getOidClass() {
-            return oidClass;
-        }
-
-        public Map<String,OID> getMap() {
-            return map;
-        }
-
-        public void setMap( Map<String,OID> map ) {
-            this.map = map;
-        }
-        
-        OID get(String id) {
-            return map.get(id);
-        }
-        
-        void put(OID oid) {
-            map.put(oid.oid, oid);
-        }
-        
-        @Override
-        public String toString() {
-            StringBuilder str = new StringBuilder();
-            str.append("<").append(getName()).append(" OID=\"").append(oid).append("\">");
-            for ( String k : map.keySet()) {
-                str.append(k).append(" : ").append( map.get( k ));
-            }
-            str.append("</").append(name).append(">");
-            return str.toString();
-        }
-    }
-    
-    static {
-        InputStream  xmlIn = OBJECTIDENTIFIER.class.getResourceAsStream("OBJECTIDENTIFIER.xml");
-        try {
-            Document oidNameXml = XMLIO.readXML(xmlIn);
-            XElement rootElement = new XElement(oidNameXml.getDocumentElement());
-            setKey( root, rootElement );
-            
-        } catch ( SAXException | ParserConfigurationException | IOException ex ) {
-            Logger.getLogger(OBJECTIDENTIFIER.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            try {
-                xmlIn.close();
-            } catch ( IOException ex ) {
-                Logger.getLogger(OBJECTIDENTIFIER.class.getName()).log(Level.SEVERE, null, ex);
-            }
-        }
-    }
-
-    private static void setKey( OID key, XElement ele ) {
-        
-        List<XElement> subKeys = ele.getElements();
-        for ( XElement etag : subKeys ) {
-            OID newKey = new OID();
-            newKey.oid = etag.getAttribute("oid");
-            newKey.name = etag.getAttribute("name");
-            key.put( newKey );
-            setKey( newKey, etag );
-        }
-    }
-
+    private OIDValue value;
     public OBJECTIDENTIFIER() {
         super(ASN1.OBJECTIDENTIFIER);
     }
@@ -140,71 +53,34 @@ public class OBJECTIDENTIFIER extends ASN1Object<String> implements ASN1Tag {
 
     @Override
     public byte[] encodeBody() {
+        return value.encoded.clone();
+    }
 
-        List<byte[]> barray = new ArrayList<>();
-        barray.add(new byte[]{ (byte) (get(0) * 40 + get(1)) });
-        for ( int n = 2; n < list.size(); n++ ) {
-            barray.add(encodeValue(n));
-        }
-        int len = 0;
-        for ( byte[] d : barray ) {
-            len += d.length;
-        }
-        byte[] dst = new byte[len];
-        len = 0;
-        for ( byte[] d : barray ) {
-            System.arraycopy(d, 0, dst, len, d.length);
-            len += d.length;
-        }
-        return dst;
-        //      throw new UnsupportedOperationException("Not supported yet.");
+    @Override
+    protected int bodyLength() {
+        return value.encoded.length;
     }
 
-    byte[] encodeValue( int off ) {
-        String val = list.get(off);
-        BigInteger bigVal = new BigInteger(val);
-        byte[] data = new byte[bigVal.bitLength() == 0 ? 1 : ((bigVal.bitLength() + 6) / 7)];
-        for ( int i = 0; i < data.length; i++ ) {
-            data[i] = (byte) (bigVal.shiftRight((data.length - i - 1) * 7).intValue() & 0x7F);
-            if ( i < data.length - 1 ) {
-                data[i] |= (byte) 0x80;
-            }
-        }
-        return data;
+    @Override
+    protected int encodeBody(byte[] dst, int offset) {
+        System.arraycopy(value.encoded, 0, dst, offset, value.encoded.length);
+        return offset + value.encoded.length;
     }
 
     @Override
     public void decodeBody( byte[] data ) {
-        list.clear();
-        int z = data[0] & 0xff;
-        list.add(Integer.toString(z / 40));
-        list.add(Integer.toString(z % 40));
-        StringBuilder code; // 表示系へ
-        code = new StringBuilder();
-        code.append((int) z / 40);
-        code.append('.');
-        code.append((int) z % 40);
-        int off = 0;
-        //   long d;
-        BigInteger bi;
-        while ( off < data.length - 1 ) {
-            //   d = 0;
-            bi = BigInteger.ZERO;
-            do {
-                off++;
-                //       d <<= 7;
-                bi = bi.shiftLeft(7);
-                //        d += data[off] & 0x7f;
-                bi = bi.add(BigInteger.valueOf(data[off] & 0x7f));
+        checkFrozen();
+        value = OIDValue.decode(ByteBuffer.wrap(data));
+    }
 
-            } while ( (data[off] & 0x80) != 0 );
-            code.append('.');
-            code.append(bi.toString());
-            list.add(bi.toString());
-        }
-        identifier = code.toString();
-//        System.out.println(" " + identifier);
-//        System.out.println( " " + getName() );
+    /**
+     * 同じ OID は共有するので値部分の複製はしない
+     * @param data 値部分
+     */
+    @Override
+    public void decodeBody( ByteBuffer data ) {
+        checkFrozen();
+        value = OIDValue.decode(data);
     }
 
     // 仮
@@ -218,69 +94,59 @@ public class OBJECTIDENTIFIER extends ASN1Object<String> implements ASN1Tag {
      * @return 
      */
     public String getName() {
-        OID key = root;
-        StringBuilder name = new StringBuilder();
-        for ( int i = 0; i < list.size(); i++ ) {
-            if ( key != null ) key = key.get( list.get(i) );
-            name.append(".");
-            if ( key != null ) {
-                String kname = key.getName();
-                name.append(kname == null ? "Unknown" : kname);
-                name.append("(").append(key.oid);
-                name.append(")");
-            } else {
-                name.append("Unknown(");
-                name.append(list.get(i));
-                name.append(")");
-            }
-        }
-        return name.substring(1);
+        return names().name;
     }
 
-    private OID getOID() {
-        OID key = root;
-        for ( String n : list ) {
-            OID newID = key.get(n);
-            if ( newID == null ) {
-                newID = new OID();
-                newID.oid = n;
-                newID.name = "Unknown" + n;
-                key.put(newID);
-            }
-            key = newID;
+    public String getShortName() {
+        return names().shortName;
+    }
+
+    /**
+     * 名前は共有している OIDValue に覚えておく.
+     * 名前表が変わったら作りなおす.
+     * @return 名前
+     */
+    private OIDValue.Names names() {
+        OIDValue.Names names = value.names;
+        int version = OIDRegistry.version();
+        if ( names == null || names.version != version ) {
+            names = resolve(version);
+            value.names = names;
         }
-        return key;
+        return names;
     }
-    
-    public String getShortName() {
-        OID key = root;
-        String name = new String();
-        for ( int i = 0; i < list.size(); i++ ) {
-            if ( key != null ) {
-                key = key.get( list.get(i) );
+
+    private OIDValue.Names resolve(int version) {
+        OID key = OIDRegistry.root();
+        StringBuilder name = new StringBuilder();
+        String shortName = null;
+        for ( int i = 0; i < value.size(); i++ ) {
+            if ( key != null ) key = key.get( value.arc(i) );
+            if ( i > 0 ) {
+                name.append(".");
             }
             if ( key != null ) {
-                name = key.getName();
+                shortName = key.getName();
+                name.append(shortName == null ? "Unknown" : shortName);
+                name.append("(").append(key.getOid());
+                name.append(")");
             } else {
-                name = "Unknown(" + list.get(i) + ")";
+                shortName = "Unknown(" + value.arc(i) + ")";
+                name.append(shortName);
             }
         }
-        return name;
+        return new OIDValue.Names(version, name.toString(), shortName);
     }
     
-    private long get( int index ) {
-        return Long.parseLong(list.get(index));
-    }
-
     @Override
     public String getValue() {
-        return identifier;
+        return value == null ? null : value.identifier;
     }
     
     @Override
     public void setValue( String id ) {
-        identifier = id;
-        list = Arrays.asList( identifier.split("\\."));
+        checkFrozen();
+        value = OIDValue.valueOf(id);
     }
     
     /**
@@ -303,24 +169,76 @@ public class OBJECTIDENTIFIER extends ASN1Object<String> implements ASN1Tag {
      * @return 正版
      */
     public OBJECTIDENTIFIER sub(long... id) {
-        StringBuilder oid = new StringBuilder(getValue());
-        for ( long i : id ) {
-            oid.append(".");
-            oid.append(i);
+        int len = value.size();
+        long[] arcs = Arrays.copyOf(value.arcs, len + id.length);
+        System.arraycopy(id, 0, arcs, len, id.length);
+        BigInteger[] bigArcs = value.bigArcs == null ? null : Arrays.copyOf(value.bigArcs, arcs.length);
+        OBJECTIDENTIFIER oid = new OBJECTIDENTIFIER();
+        oid.value = OIDValue.valueOf(arcs, bigArcs);
+        return oid;
+    }
+
+    /**
+     * 枝番号.
+     * @return 枝番号. 63bitを超えるものは -1
+     */
+    public long[] getArcs() {
+        return value.arcs.clone();
+    }
+
+    /**
+     * 枝番号.
+     * @return 枝番号
+     */
+    public BigInteger[] getBigArcs() {
+        BigInteger[] arcs = new BigInteger[value.size()];
+        for ( int i = 0; i < arcs.length; i++ ) {
+            arcs[i] = value.bigArc(i);
         }
-        return sub(oid.toString());
+        return arcs;
+    }
+
+    /**
+     * 前方一致.
+     * 枝単位で比べる. 同じときも true
+     * @param prefix 上位の OID
+     * @return prefix の下にある
+     */
+    public boolean startsWith(OBJECTIDENTIFIER prefix) {
+        return value.startsWith(prefix.value);
+    }
+
+    /**
+     * 前方一致.
+     * @param oid 下位の OID
+     * @return oid がこの下にある
+     */
+    public boolean isPrefixOf(OBJECTIDENTIFIER oid) {
+        return oid.value.startsWith(value);
     }
 
     @Override
     public Element encodeXML( Document doc ) {
         Element ele = doc.createElement( ASN1.OBJECTIDENTIFIER.name() );
-        ele.setTextContent(identifier);
+        ele.setTextContent(getValue());
         ele.setAttribute("short", getShortName() );
         return ele;
     }
 
+    @Override
+    public void encodeXML( XMLStreamWriter out ) throws XMLStreamException {
+        out.writeStartElement( ASN1.OBJECTIDENTIFIER.name() );
+        String shortName = getShortName();
+        if ( shortName != null ) {
+            out.writeAttribute("short", shortName );
+        }
+        out.writeCharacters(getValue());
+        out.writeEndElement();
+    }
+
     @Override
     public void decodeXML( Element ele ) {
+        checkFrozen();
         setValue( ele.getTextContent() );
     }
     
@@ -328,8 +246,31 @@ public class OBJECTIDENTIFIER extends ASN1Object<String> implements ASN1Tag {
     public boolean equals(Object o) {
         if ( o != null && o instanceof OBJECTIDENTIFIER ) {
             OBJECTIDENTIFIER oid = (OBJECTIDENTIFIER) o;
-            return oid.identifier.equals(identifier);
+            return oid.value == value || (oid.value != null && oid.value.equals(value));
         }
         return false;
     }
+
+    @Override
+    public int hashCode() {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    /**
+     * 同じ型のときは枝番号順
+     * @param o 比較先
+     * @return 比較
+     */
+    @Override
+    public int compareTo( ASN1Object o ) {
+        int c = super.compareTo(o);
+        if ( c == 0 && o instanceof OBJECTIDENTIFIER ) {
+            OBJECTIDENTIFIER oid = (OBJECTIDENTIFIER) o;
+            if ( value == null || oid.value == null ) {
+                return value == null ? (oid.value == null ? 0 : -1) : 1;
+            }
+            return value.compareTo(oid.value);
+        }
+        return c;
+    }
 }
@@ -16,8 +16,9 @@
 package net.siisise.iso.asn1.tag;
 
 import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.nio.ByteBuffer;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import net.siisise.io.BASE64;
 import net.siisise.iso.asn1.ASN1;
 import net.siisise.iso.asn1.ASN1Object;
@@ -31,6 +32,10 @@ import org.w3c.dom.Element;
  */
 public class OCTETSTRING extends ASN1Object<byte[]> implements ASN1Tag {
     private byte[] data;
+    /**
+     * デコード元の参照. 必要になるまで複製しない
+     */
+    private ByteBuffer src;
     
     public OCTETSTRING() {
         super( ASN1.OCTETSTRING );
@@ -41,14 +46,70 @@ public class OCTETSTRING extends ASN1Object<byte[]> implements ASN1Tag {
         data = d; // コピーしたほうがいい?
     }
 
+    /**
+     * freeze 後は src を残し、毎回複製を返す
+     */
+    private byte[] data() {
+        if ( data == null && src != null ) {
+            byte[] d = new byte[src.remaining()];
+            src.duplicate().get(d);
+            if ( isFrozen() ) {
+                return d;
+            }
+            data = d;
+            src = null;
+        }
+        return data;
+    }
+
+    /**
+     * freeze 後は外に出すときに複製する
+     */
+    private byte[] copy() {
+        byte[] d = data();
+        return isFrozen() && d == data ? d.clone() : d;
+    }
+
     @Override
     public byte[] encodeBody() {
-        return data;
+        return copy();
+    }
+
+    @Override
+    protected int bodyLength() {
+        return src != null ? src.remaining() : data.length;
+    }
+
+    /**
+     * デコード元の参照があればそこから直接書く
+     */
+    @Override
+    protected int encodeBody(byte[] dst, int offset) {
+        if ( src != null ) {
+            int len = src.remaining();
+            src.duplicate().get(dst, offset, len);
+            return offset + len;
+        }
+        System.arraycopy(data, 0, dst, offset, data.length);
+        return offset + data.length;
     }
 
     @Override
     public void decodeBody(byte[] src) {
+        checkFrozen();
         data = src;
+        this.src = null;
+    }
+
+    /**
+     * 複製せずに参照だけ持つ.
+     * @param src 値
+     */
+    @Override
+    public void decodeBody(ByteBuffer src) {
+        checkFrozen();
+        data = null;
+        this.src = src;
     }
 
     @Override
@@ -56,25 +117,31 @@ public class OCTETSTRING extends ASN1Object<byte[]> implements ASN1Tag {
         Element ele = doc.createElement( ASN1.OCTETSTRING.name() );
        // ele.setAttribute("ex", new String(data, StandardCharsets.UTF_8));
         BASE64 b64 = new BASE64();
-        String val = b64.encode(data);
+        String val = b64.encode(data());
         ele.setTextContent(val);
         return ele;
     }
 
+    @Override
+    public void encodeXML( XMLStreamWriter out ) throws XMLStreamException {
+        out.writeStartElement( ASN1.OCTETSTRING.name() );
+        out.writeCharacters(new BASE64().encode(data()));
+        out.writeEndElement();
+    }
+
     @Override
     public void decodeXML( Element element ) {
+        checkFrozen();
         data = BASE64.decodeBase(element.getTextContent());
+        src = null;
     }
     
     public String toString() {
+            byte[] data = data();
             try {
-                return "OCTET STRING len;" + data.length + ASN1Util.toASN1List(data);
-            } catch (java.lang.UnsupportedOperationException ex) {
-//                Logger.getLogger(OCTETSTRING.class.getName()).log(Level.SEVERE, null, ex);
-//                System.out.println(ex.getLocalizedMessage());
-                // まだ
-            } catch (IOException ex) {
-                Logger.getLogger(OCTETSTRING.class.getName()).log(Level.SEVERE, null, ex);
+                return "OCTET STRING len;" + data.length + ASN1Util.toASN1ListShared(data);
+            } catch (IOException | RuntimeException ex) {
+                // ASN.1 でないときはダンプ
             }
         
         
@@ -83,7 +150,7 @@ public class OCTETSTRING extends ASN1Object<byte[]> implements ASN1Tag {
     
     String dump() {
         StringBuilder sb = new StringBuilder();
-        for (byte d : data ) {
+        for (byte d : data() ) {
             if ( (d > 0x21 && d<=0x24) || (d >= 0x26 && d <= 0x7e) ) {
                 sb.append((char)d);
             } else {
@@ -95,16 +162,31 @@ public class OCTETSTRING extends ASN1Object<byte[]> implements ASN1Tag {
     }
 
     /**
-     * TODO: 場合によっては要コピー
+     * setValue などで渡された配列は複製してから持つ
+     * @return this
+     */
+    @Override
+    public OCTETSTRING freeze() {
+        if ( !isFrozen() && data != null ) {
+            data = data.clone();
+        }
+        super.freeze();
+        return this;
+    }
+
+    /**
+     * freeze 後は複製を返す
      * @return 
      */
     @Override
     public byte[] getValue() {
-        return data;
+        return copy();
     }
 
     @Override
     public void setValue( byte[] val ) {
+        checkFrozen();
         data = val;
+        src = null;
     }
 }
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1.tag;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.parsers.ParserConfigurationException;
+import net.siisise.xml.XElement;
+import net.siisise.xml.XMLIO;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * OID の名前表.
+ * OBJECTIDENTIFIER.xml をビルド時に OBJECTIDENTIFIER.dat (DataOutputStream 形式) にしておき、
+ * getName / getShortName で初めて使うときに読む.
+ * .dat がないときは XML を読む.
+ *
+ * 利用者の XML や名前は実行時に追加できる.
+ */
+public final class OIDRegistry {
+
+    static final String XML = "OBJECTIDENTIFIER.xml";
+    static final String DAT = "OBJECTIDENTIFIER.dat";
+    /**
+     * .dat の先頭 'OIDR'
+     */
+    private static final int MAGIC = 0x4f494452;
+    private static final int VERSION = 1;
+    /**
+     * 枝の上限.
+     * 名前を引くだけでは枝は増えないが、外部の XML などで増やしすぎないように
+     */
+    static final int MAX_NODES = 100000;
+    private static final AtomicInteger nodes = new AtomicInteger();
+    /**
+     * 名前を追加するたびに増える. 覚えた名前を捨てる目安
+     */
+    private static final AtomicInteger version = new AtomicInteger();
+
+    private OIDRegistry() {
+    }
+
+    /**
+     * 枝.
+     * 読むときは同期しない. 追加は computeIfAbsent のみ.
+     */
+    static class OID {
+        final String oid;
+        volatile String name;
+        private Class oidClass;
+        private final ConcurrentMap<String,OID> map = new ConcurrentHashMap<>();
+
+        OID(String oid) {
+            this.oid = oid;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName( String name ) {
+            this.name = name;
+        }
+
+        public Class getOidClass() {
+            return oidClass;
+        }
+
+        public Map<String,OID> getMap() {
+            return Collections.unmodifiableMap(map);
+        }
+
+        String getOid() {
+            return oid;
+        }
+
+        OID get(String id) {
+            return map.get(id);
+        }
+
+        /**
+         * なければ追加する.
+         * @param id 枝番号
+         * @return 枝
+         */
+        OID add(String id) {
+            OID sub = map.get(id);
+            if ( sub != null ) {
+                return sub;
+            }
+            return map.computeIfAbsent(id, k -> {
+                if ( nodes.incrementAndGet() > MAX_NODES ) {
+                    nodes.decrementAndGet();
+                    throw new IllegalStateException("OID registry full");
+                }
+                return new OID(k);
+            });
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder str = new StringBuilder();
+            str.append("<").append(getName()).append(" OID=\"").append(oid).append("\">");
+            for ( Map.Entry<String,OID> e : map.entrySet()) {
+                str.append(e.getKey()).append(" : ").append( e.getValue() );
+            }
+            str.append("</").append(name).append(">");
+            return str.toString();
+        }
+    }
+
+    /**
+     * 初めて使うときに読む
+     */
+    private static class Holder {
+        static final OID ROOT = load();
+    }
+
+    /**
+     * 名前解決用の根
+     * @return 根
+     */
+    static OID root() {
+        return Holder.ROOT;
+    }
+
+    /**
+     * 名前表の版
+     * @return 版
+     */
+    static int version() {
+        return version.get();
+    }
+
+    private static OID load() {
+        OID root = new OID(null);
+        InputStream in = OIDRegistry.class.getResourceAsStream(DAT);
+        if ( in != null ) {
+            try ( DataInputStream din = new DataInputStream(new BufferedInputStream(in)) ) {
+                readTree(root, din);
+                return root;
+            } catch ( IOException ex ) {
+                Logger.getLogger(OIDRegistry.class.getName()).log(Level.WARNING, DAT, ex);
+                root = new OID(null);
+                nodes.set(0);
+            }
+        }
+        try ( InputStream xmlIn = OIDRegistry.class.getResourceAsStream(XML) ) {
+            setKey( root, readXML(xmlIn) );
+        } catch ( SAXException | ParserConfigurationException | IOException ex ) {
+            Logger.getLogger(OIDRegistry.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return root;
+    }
+
+    private static XElement readXML(InputStream xmlIn) throws SAXException, ParserConfigurationException, IOException {
+        Document oidNameXml = XMLIO.readXML(xmlIn);
+        return new XElement(oidNameXml.getDocumentElement());
+    }
+
+    /**
+     * 同じ枝があれば名前を上書きし、子は足す
+     * @param key 親
+     * @param ele 子を持つ要素
+     */
+    private static void setKey( OID key, XElement ele ) {
+        List<XElement> subKeys = ele.getElements();
+        for ( XElement etag : subKeys ) {
+            OID newKey = key.add(etag.getAttribute("oid"));
+            newKey.name = etag.getAttribute("name");
+            setKey( newKey, etag );
+        }
+    }
+
+    /**
+     * OBJECTIDENTIFIER.xml と同じ形式の名前を追加する.
+     * 枝が MAX_NODES を超えると IllegalStateException
+     * @param xmlIn XML
+     * @throws IOException
+     */
+    public static void load(InputStream xmlIn) throws IOException {
+        XElement ele;
+        try {
+            ele = readXML(xmlIn);
+        } catch ( SAXException | ParserConfigurationException ex ) {
+            throw new IOException(ex);
+        }
+        try {
+            setKey( root(), ele );
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 名前を追加する.
+     * 途中の枝がなければ名前なしで作る.
+     * @param oid ドット区切り
+     * @param name 名前
+     */
+    public static void register(String oid, String name) {
+        OIDValue v = OIDValue.valueOf(oid);
+        OID key = root();
+        try {
+            for ( int i = 0; i < v.size(); i++ ) {
+                key = key.add(v.arc(i));
+            }
+            key.name = name;
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    private static void readTree(OID key, DataInputStream in) throws IOException {
+        if ( in.readInt() != MAGIC || in.readUnsignedShort() != VERSION ) {
+            throw new IOException("format");
+        }
+        readKey(key, in);
+    }
+
+    private static void readKey(OID key, DataInputStream in) throws IOException {
+        int size = in.readInt();
+        for ( int i = 0; i < size; i++ ) {
+            OID newKey = key.add(in.readUTF());
+            newKey.name = in.readBoolean() ? in.readUTF() : null;
+            readKey( newKey, in );
+        }
+    }
+
+    private static void writeTree(OID key, OutputStream out) throws IOException {
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(MAGIC);
+        dout.writeShort(VERSION);
+        writeKey(key, dout);
+        dout.flush();
+    }
+
+    private static void writeKey(OID key, DataOutputStream out) throws IOException {
+        out.writeInt(key.map.size());
+        for ( OID sub : key.map.values() ) {
+            out.writeUTF(sub.oid);
+            out.writeBoolean(sub.name != null);
+            if ( sub.name != null ) {
+                out.writeUTF(sub.name);
+            }
+            writeKey(sub, out);
+        }
+    }
+
+    /**
+     * ビルド時に XML から .dat を作る.
+     * @param args XMLファイル 出力ファイル
+     * @throws IOException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public static void main(String[] args) throws IOException, SAXException, ParserConfigurationException {
+        OID root = new OID(null);
+        try ( InputStream in = new FileInputStream(args[0]) ) {
+            setKey( root, readXML(in) );
+        }
+        try ( OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1])) ) {
+            writeTree(root, out);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1.tag;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * OBJECTIDENTIFIER の中身.
+ * 変更しないので複数の OBJECTIDENTIFIER で共有する.
+ * ドット区切り文字列, 枝番号, DER の値部分を持つ.
+ *
+ * デコードしたものは DER の値部分をキーにした表で使い回す.
+ * 同じ OID ならバイト列を比較するだけで新しく作らない.
+ */
+final class OIDValue {
+
+    /**
+     * 共有表の大きさ. 2のべき乗
+     */
+    private static final int CACHE_SIZE = 1024;
+    /**
+     * 共有する最大長. 長いものは毎回作る
+     */
+    private static final int CACHE_MAX = 64;
+    /**
+     * 直接写像. 衝突したら上書きする
+     * 中身は final のみなので同期しなくても見えかたは壊れない
+     */
+    private static final OIDValue[] CACHE = new OIDValue[CACHE_SIZE];
+
+    /** ドット区切り */
+    final String identifier;
+    /**
+     * 枝番号. 63bitを超えるものは -1
+     */
+    final long[] arcs;
+    /**
+     * 63bitを超える枝番号があるときのみ. 超えない枝は null
+     */
+    final BigInteger[] bigArcs;
+    /** DER の値部分 */
+    final byte[] encoded;
+    private final int hash;
+    /**
+     * 名前表から引いた名前
+     */
+    volatile Names names;
+
+    /**
+     * getName, getShortName の結果.
+     * 名前表の版ごと
+     */
+    static final class Names {
+        final int version;
+        final String name;
+        final String shortName;
+
+        Names(int version, String name, String shortName) {
+            this.version = version;
+            this.name = name;
+            this.shortName = shortName;
+        }
+    }
+
+    private OIDValue(String identifier, long[] arcs, BigInteger[] bigArcs, byte[] encoded) {
+        this.identifier = identifier;
+        this.arcs = arcs;
+        this.bigArcs = bigArcs;
+        this.encoded = encoded;
+        hash = hash(ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * ドット区切りから.
+     * @param id ドット区切り
+     * @return 値
+     */
+    static OIDValue valueOf(String id) {
+        String[] sp = id.split("\\.", -1);
+        if (sp.length < 2) {
+            throw new IllegalArgumentException(id);
+        }
+        long[] arcs = new long[sp.length];
+        BigInteger[] bigArcs = null;
+        for (int i = 0; i < sp.length; i++) {
+            BigInteger arc = new BigInteger(sp[i]);
+            if (arc.signum() < 0) {
+                throw new IllegalArgumentException(id);
+            }
+            if (arc.bitLength() < 64) {
+                arcs[i] = arc.longValue();
+            } else {
+                if (bigArcs == null) {
+                    bigArcs = new BigInteger[sp.length];
+                }
+                bigArcs[i] = arc;
+                arcs[i] = -1;
+            }
+        }
+        return valueOf(arcs, bigArcs);
+    }
+
+    /**
+     * 枝番号から.
+     * @param arcs 枝番号
+     * @param bigArcs 63bitを超える枝番号. なければ null
+     * @return 値
+     */
+    static OIDValue valueOf(long[] arcs, BigInteger[] bigArcs) {
+        if (arcs.length < 2 || arcs[0] < 0 || arcs[0] > 2 || (arcs[0] < 2 && (arcs[1] < 0 || arcs[1] >= 40))) {
+            throw new IllegalArgumentException("OID " + Arrays.toString(arcs));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StringBuilder code = new StringBuilder();
+        code.append(arcs[0]);
+        for (int i = 1; i < arcs.length; i++) {
+            BigInteger big = bigArcs == null ? null : bigArcs[i];
+            if (big == null && arcs[i] < 0) {
+                throw new IllegalArgumentException("OID " + Arrays.toString(arcs));
+            }
+            code.append('.');
+            if (big != null) {
+                code.append(big);
+            } else {
+                code.append(arcs[i]);
+            }
+            if (i == 1) {
+                if (big != null || arcs[1] > Long.MAX_VALUE - 80) {
+                    encodeArc(out, (big != null ? big : BigInteger.valueOf(arcs[1])).add(BigInteger.valueOf(arcs[0] * 40)));
+                } else {
+                    encodeArc(out, arcs[0] * 40 + arcs[1]);
+                }
+            } else if (big != null) {
+                encodeArc(out, big);
+            } else {
+                encodeArc(out, arcs[i]);
+            }
+        }
+        return new OIDValue(code.toString(), arcs.clone(), bigArcs == null ? null : bigArcs.clone(), out.toByteArray());
+    }
+
+    private static void encodeArc(ByteArrayOutputStream out, long arc) {
+        int len = arc == 0 ? 1 : (64 - Long.numberOfLeadingZeros(arc) + 6) / 7;
+        for (int i = len - 1; i >= 0; i--) {
+            int d = (int) (arc >>> (i * 7)) & 0x7f;
+            out.write(i > 0 ? d | 0x80 : d);
+        }
+    }
+
+    private static void encodeArc(ByteArrayOutputStream out, BigInteger arc) {
+        int len = arc.signum() == 0 ? 1 : (arc.bitLength() + 6) / 7;
+        for (int i = len - 1; i >= 0; i--) {
+            int d = arc.shiftRight(i * 7).intValue() & 0x7f;
+            out.write(i > 0 ? d | 0x80 : d);
+        }
+    }
+
+    /**
+     * 枝の数
+     * @return 枝の数
+     */
+    int size() {
+        return arcs.length;
+    }
+
+    /**
+     * 枝番号の文字列
+     * @param i 位置
+     * @return 10進数
+     */
+    String arc(int i) {
+        return arcs[i] < 0 ? bigArcs[i].toString() : Long.toString(arcs[i]);
+    }
+
+    /**
+     * 枝番号
+     * @param i 位置
+     * @return 枝番号
+     */
+    BigInteger bigArc(int i) {
+        return arcs[i] < 0 ? bigArcs[i] : BigInteger.valueOf(arcs[i]);
+    }
+
+    /**
+     * 前方一致.
+     * 枝の区切りは最後のバイトの上位bitで決まるので、バイト列の前方一致と同じになる.
+     * @param prefix 前
+     * @return prefix で始まる
+     */
+    boolean startsWith(OIDValue prefix) {
+        byte[] p = prefix.encoded;
+        if (p.length > encoded.length) {
+            return false;
+        }
+        for (int i = 0; i < p.length; i++) {
+            if (p[i] != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 枝番号順
+     * @param o 比較先
+     * @return 比較
+     */
+    int compareTo(OIDValue o) {
+        int len = Math.min(arcs.length, o.arcs.length);
+        for (int i = 0; i < len; i++) {
+            long a = arcs[i];
+            long b = o.arcs[i];
+            if (a != b) {
+                if (a < 0 || b < 0) {
+                    return bigArc(i).compareTo(o.bigArc(i));
+                }
+                return Long.compare(a, b);
+            } else if (a < 0) {
+                int c = bigArcs[i].compareTo(o.bigArcs[i]);
+                if (c != 0) {
+                    return c;
+                }
+            }
+        }
+        return arcs.length - o.arcs.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof OIDValue) {
+            OIDValue v = (OIDValue) o;
+            return hash == v.hash && Arrays.equals(encoded, v.encoded);
+        }
+        return false;
+    }
+
+    /**
+     * DER の値部分から.
+     * 共有表にあればそれを返す.
+     * @param src 値部分. position から limit まで. 位置は変えない
+     * @return 値
+     */
+    static OIDValue decode(ByteBuffer src) {
+        int len = src.remaining();
+        if (len > CACHE_MAX) {
+            return decodeValue(src);
+        }
+        int h = hash(src);
+        int slot = (h ^ (h >>> 16)) & (CACHE_SIZE - 1);
+        OIDValue v = CACHE[slot];
+        if (v != null && v.hash == h && v.matches(src)) {
+            return v;
+        }
+        v = decodeValue(src);
+        CACHE[slot] = v;
+        return v;
+    }
+
+    private boolean matches(ByteBuffer src) {
+        int len = encoded.length;
+        if (src.remaining() != len) {
+            return false;
+        }
+        int p = src.position();
+        for (int i = 0; i < len; i++) {
+            if (encoded[i] != src.get(p + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(ByteBuffer src) {
+        int h = 1;
+        for (int i = src.position(); i < src.limit(); i++) {
+            h = 31 * h + src.get(i);
+        }
+        return h;
+    }
+
+    private static OIDValue decodeValue(ByteBuffer src) {
+        byte[] data = new byte[src.remaining()];
+        src.duplicate().get(data);
+        if (data.length == 0 || (data[data.length - 1] & 0x80) != 0) {
+            throw new IllegalArgumentException("OID length");
+        }
+        int count = 1;
+        for (byte b : data) {
+            if ((b & 0x80) == 0) {
+                count++;
+            }
+        }
+        long[] arcs = new long[count];
+        BigInteger[] bigArcs = null;
+        StringBuilder code = new StringBuilder();
+        int off = 0;
+        int n = 1;
+        while (off < data.length) {
+            long d = 0;
+            BigInteger bi = null;
+            do {
+                if (bi != null) {
+                    bi = bi.shiftLeft(7).or(BigInteger.valueOf(data[off] & 0x7f));
+                } else if ((d >>> 56) != 0) {
+                    bi = BigInteger.valueOf(d).shiftLeft(7).or(BigInteger.valueOf(data[off] & 0x7f));
+                } else {
+                    d = (d << 7) | (data[off] & 0x7f);
+                }
+            } while ((data[off++] & 0x80) != 0);
+            if (n == 1) { // 最初の2つ
+                arcs[0] = bi == null && d < 80 ? d / 40 : 2;
+                if (bi != null) {
+                    bi = bi.subtract(BigInteger.valueOf(80));
+                    if (bi.bitLength() < 64) {
+                        d = bi.longValue();
+                        bi = null;
+                    }
+                } else {
+                    d -= arcs[0] * 40;
+                }
+                code.append(arcs[0]);
+            }
+            code.append('.');
+            if (bi != null) {
+                if (bigArcs == null) {
+                    bigArcs = new BigInteger[count];
+                }
+                bigArcs[n] = bi;
+                arcs[n] = -1;
+                code.append(bi);
+            } else {
+                arcs[n] = d;
+                code.append(d);
+            }
+            n++;
+        }
+        return new OIDValue(code.toString(), arcs, bigArcs, data);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.ietf.pkcs5;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * PBKDF2HMAC
+ */
+public class PBKDF2HMACTest {
+
+    /**
+     * RFC 6070 PBKDF2 HMAC-SHA1 Test Vectors.
+     * c = 16777216 は時間がかかるので除く
+     */
+    @Test
+    public void testRFC6070() throws GeneralSecurityException {
+        rfc6070("password", "salt", 1, "0c60c80f961f0e71f3a9b524af6012062fe037a6");
+        rfc6070("password", "salt", 2, "ea6c014dc72d6f8ccd1ed92ace1d41f0d8de8957");
+        rfc6070("password", "salt", 4096, "4b007901b765489abead49d926f721d065a429c1");
+        rfc6070("passwordPASSWORDpassword", "saltSALTsaltSALTsaltSALTsaltSALTsalt", 4096,
+                "3d2eec4fe41c849b80c8d83662c0e44a8b291a964cf2f07038");
+        rfc6070("pass\0word", "sa\0lt", 4096, "56fa6aa75548099dcc37d7f03425e0c3");
+    }
+
+    private void rfc6070(String p, String s, int c, String dk) throws GeneralSecurityException {
+        byte[] expected = hex(dk);
+        PBKDF2HMAC kdf = new PBKDF2HMAC(MessageDigest.getInstance("SHA-1"));
+        byte[] result = kdf.pbkdf(p.getBytes(StandardCharsets.US_ASCII), s.getBytes(StandardCharsets.US_ASCII),
+                c, expected.length);
+        assertArrayEquals(expected, result);
+    }
+
+    /**
+     * JCA の PBKDF2WithHmacSHA* と比べる.
+     * パスワード、ソルトがブロック長を超えるもの、出力が複数ブロックになるものも含む
+     */
+    @Test
+    public void testJCA() throws GeneralSecurityException {
+        String[][] algs = {
+            {"SHA-1", "PBKDF2WithHmacSHA1"},
+            {"SHA-224", "PBKDF2WithHmacSHA224"},
+            {"SHA-256", "PBKDF2WithHmacSHA256"},
+            {"SHA-384", "PBKDF2WithHmacSHA384"},
+            {"SHA-512", "PBKDF2WithHmacSHA512"}
+        };
+        String[] passwords = {"", "password", repeat('p', 64), repeat('p', 129)};
+        String[] salts = {"salt", repeat('s', 55), repeat('s', 56), repeat('s', 200)};
+        for (String[] alg : algs) {
+            for (String password : passwords) {
+                for (String salt : salts) {
+                    jca(alg[0], alg[1], password, salt.getBytes(StandardCharsets.US_ASCII), 1000, 100);
+                }
+            }
+        }
+        // OWASP の回数
+        jca("SHA-256", "PBKDF2WithHmacSHA256", "password", "saltSALTsaltSALT".getBytes(StandardCharsets.US_ASCII), 600000, 32);
+    }
+
+    private void jca(String digest, String jcaAlg, String password, byte[] salt, int c, int dkLen) throws GeneralSecurityException {
+        // 空のパスワードは JCA では使えないことがある. testCallerDigest で見る
+        if (password.isEmpty()) {
+            return;
+        }
+        SecretKeyFactory factory = SecretKeyFactory.getInstance(jcaAlg);
+        byte[] expected = factory.generateSecret(new PBEKeySpec(password.toCharArray(), salt, c, dkLen * 8)).getEncoded();
+        byte[] result = new PBKDF2HMAC(MessageDigest.getInstance(digest)).pbkdf(password.getBytes(StandardCharsets.US_ASCII), salt, c, dkLen);
+        assertArrayEquals(expected, result, digest + " " + password.length() + " " + salt.length);
+    }
+
+    /**
+     * 渡した MessageDigest の複製で計算する.
+     * 名前の知らない MessageDigest でもブロック長を渡せば同じ結果になる
+     */
+    @Test
+    public void testCallerDigest() throws GeneralSecurityException {
+        byte[] salt = "saltSALTsaltSALT".getBytes(StandardCharsets.US_ASCII);
+        for (String alg : new String[] {"SHA-1", "SHA-224", "SHA-256", "SHA-384", "SHA-512"}) {
+            for (String p : new String[] {"", repeat('p', 200)}) {
+                byte[] password = p.getBytes(StandardCharsets.US_ASCII);
+                int blockLength = PBKDF2HMAC.blockLength(alg);
+                NoState md = new NoState(MessageDigest.getInstance(alg));
+                byte[] expected = PBKDF2HMAC.pbkdf2(MessageDigest.getInstance(alg), blockLength, password, salt, 100, 70);
+                byte[] result = PBKDF2HMAC.pbkdf2(md, blockLength, password, salt, 100, 70);
+                assertArrayEquals(expected, result, alg);
+                assertTrue(md.clones > 0, alg);
+            }
+        }
+    }
+
+    /**
+     * 名前だけ違う MessageDigest. clone の数を数える
+     */
+    private static class NoState extends MessageDigest implements Cloneable {
+
+        private final MessageDigest md;
+        private int clones;
+
+        NoState(MessageDigest md) {
+            super("NoState-" + md.getAlgorithm());
+            this.md = md;
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return md.getDigestLength();
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            md.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            md.update(input, offset, len);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            return md.digest();
+        }
+
+        @Override
+        protected void engineReset() {
+            md.reset();
+        }
+
+        @Override
+        public Object clone() throws CloneNotSupportedException {
+            clones++;
+            return new NoState((MessageDigest) md.clone());
+        }
+    }
+
+    private static String repeat(char ch, int len) {
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    private static byte[] hex(String s) {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return b;
+    }
+}
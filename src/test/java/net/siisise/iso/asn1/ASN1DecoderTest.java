@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import net.siisise.iso.asn1.tag.OCTETSTRING;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ASN1Decoder
+ */
+public class ASN1DecoderTest {
+
+    /**
+     * 途中で切れた TLV は EOFException
+     */
+    @Test
+    public void testTruncated() {
+        byte[][] src = {
+            {0x30},
+            {0x04, (byte) 0x82, 0x01},
+            {0x1f},
+            {0x04, 0x05, 0x01},
+            {0x30, 0x03, 0x04, 0x02, 0x01}
+        };
+        for (byte[] s : src) {
+            assertThrows(EOFException.class, () -> ASN1Util.toASN1(s));
+            assertThrows(EOFException.class, () -> ASN1Util.toASN1Lazy(s));
+            assertThrows(EOFException.class, () -> ASN1Decoder.toASN1(new ByteArrayInputStream(s)));
+        }
+        assertThrows(EOFException.class, () -> ASN1Decoder.skip(ByteBuffer.wrap(new byte[] {0x04, (byte) 0x81})));
+    }
+
+    /**
+     * int に収まらない長さは IOException
+     */
+    @Test
+    public void testLongLength() {
+        byte[][] src = {
+            {0x04, (byte) 0x85, 0x01, 0x00, 0x00, 0x00, 0x01, 0x09},
+            {0x04, (byte) 0x84, (byte) 0x80, 0x00, 0x00, 0x00, 0x09}
+        };
+        for (byte[] s : src) {
+            assertThrows(IOException.class, () -> ASN1Util.toASN1(s));
+            assertThrows(IOException.class, () -> ASN1Decoder.toASN1(new ByteArrayInputStream(s)));
+            assertThrows(IOException.class, () -> ASN1Decoder.skip(ByteBuffer.wrap(s)));
+        }
+    }
+
+    /**
+     * byte[] 版は入力を複製する
+     */
+    @Test
+    public void testCopy() throws IOException {
+        byte[] src = {0x04, 0x02, 0x01, 0x02};
+        ASN1Object obj = ASN1Util.toASN1(src);
+        src[2] = 0x7f;
+        assertArrayEquals(new byte[] {0x01, 0x02}, obj.encodeBody());
+        obj = ASN1Util.toASN1List(src).get(0);
+        src[2] = 0x01;
+        assertArrayEquals(new byte[] {0x7f, 0x02}, obj.encodeBody());
+    }
+
+    /**
+     * ASN.1 でない値はダンプになる
+     */
+    @Test
+    public void testOctetStringToString() {
+        Random rnd = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            byte[] data = new byte[20];
+            rnd.nextBytes(data);
+            OCTETSTRING o = new OCTETSTRING();
+            o.decodeBody(data);
+            assertNotNull(o.toString());
+        }
+    }
+}
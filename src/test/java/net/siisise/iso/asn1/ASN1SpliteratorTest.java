@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.ByteArrayInputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ASN1Spliterator
+ */
+public class ASN1SpliteratorTest {
+
+    private static final byte[] DER = {0x02, 0x01, 0x01, 0x05, 0x00, 0x02, 0x01, 0x02};
+
+    @Test
+    public void testStream() {
+        assertEquals(3, ASN1Util.stream(DER).count());
+        assertEquals(3, ASN1Util.stream(new ByteArrayInputStream(DER)).count());
+        List<ASN1Object> list = ASN1Util.stream(DER).parallel().collect(Collectors.toList());
+        assertEquals(3, list.size());
+        assertEquals(ASN1.NULL.id, list.get(1).getId());
+    }
+
+    /**
+     * 最上位の終端は null にしない
+     */
+    @Test
+    public void testEndOfContents() {
+        byte[][] src = {{0x00, 0x00}, {0x05, 0x00, 0x00, 0x00}};
+        for (byte[] s : src) {
+            assertThrows(UncheckedIOException.class, () -> ASN1Util.stream(s).count());
+            assertThrows(UncheckedIOException.class, () -> ASN1Util.stream(new ByteArrayInputStream(s)).count());
+        }
+    }
+}
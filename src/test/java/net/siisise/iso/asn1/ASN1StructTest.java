@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.xml.stream.XMLStreamException;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ASN1Struct
+ */
+public class ASN1StructTest {
+
+    /**
+     * X.690 11.6 SET OF は符号の順
+     */
+    @Test
+    public void testSetOf() throws IOException, XMLStreamException {
+        // INTEGER 3, 1, 2
+        set("3109020103020101020102", "3109020101020102020103");
+        // OCTET STRING 0909, 01 長さの違うもの
+        set("3107040209090401 01", "3107040101040209 09");
+        // 前が同じもの
+        set("310704020101040101", "310704010104020101");
+    }
+
+    /**
+     * X.690 10.3 SET はタグの順. 構造化フラグは見ない
+     */
+    @Test
+    public void testSetTagOrder() throws IOException, XMLStreamException {
+        // NULL (5), 構造化 OCTET STRING (4)
+        set("3106050024020400", "3106240204000500");
+        // [2] primitive, [1] constructed
+        lazySet("3108820100a103020105", "3108a103020105820100");
+        // [40] primitive, [5] constructed
+        lazySet("31089f280100a5020500", "3108a50205009f280100");
+        // private, context, application, universal
+        lazySet("310cc10100800100410100020100", "310c020100410100800100c10100");
+        // [31] 長形式, [30] 短形式
+        lazySet("31079f1f01009e0100", "31079e01009f1f0100");
+    }
+
+    /**
+     * 木から書いても XML から書いても同じ順になる
+     */
+    private static void set(String src, String expected) throws IOException, XMLStreamException {
+        byte[] der = hex(src);
+        byte[] exp = hex(expected);
+        assertArrayEquals(exp, ASN1Util.toASN1(der).encodeAll(), src);
+        assertArrayEquals(exp, ASN1Util.toASN1Lazy(der).encodeAll(), src);
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        ASN1Util.toXML(ASN1Util.toASN1(der), xml);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ASN1Util.toDER(xml.toByteArray(), out);
+        assertArrayEquals(exp, out.toByteArray(), src);
+    }
+
+    /**
+     * 汎用以外のプリミティブは木にできないので、子をデコードしない遅延デコードで見る
+     */
+    private static void lazySet(String src, String expected) throws IOException {
+        assertArrayEquals(hex(expected), ASN1Util.toASN1Lazy(hex(src)).encodeAll(), src);
+    }
+
+    private static byte[] hex(String s) {
+        s = s.replace(" ", "");
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return b;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.IOException;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * GSERWriter, GSERReader
+ */
+public class GSERTest {
+
+    /**
+     * SEQUENCE { INTEGER 0, -1, -129, 2^70, -2^70, BOOLEAN, NULL, OID, UTF8String, PrintableString, IA5String,
+     * OCTET STRING, BIT STRING 3bit, 0bit, 12bit, SET, [0], [1] }
+     */
+    private static final String DER = "30680201000201ff0202ff7f02094000000000000000000209c00000000000000000"
+            + "0101ff010100050006092a864886f70d01010b0c0961226222226320c3a913024a50160378407904020a0b0400"
+            + "030205a0030100030304abc03106020101020102a003020105a100";
+
+    private static final String GSER = "{ 0, -1, -129, 1180591620717411303424, -1180591620717411303424,"
+            + " TRUE, FALSE, NULL, 1.2.840.113549.1.1.11, \"a\"\"b\"\"\"\"c é\","
+            + " printablestring:\"JP\", ia5string:\"x@y\", '0A0B'H, ''H, '101'B, ''B, '101010111100'B,"
+            + " set:{ 1, 2 }, context-0:{ 5 }, context-1:{ } }";
+
+    /**
+     * DER → GSER → DER
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] der = hex(DER);
+        StringBuilder gser = new StringBuilder();
+        ASN1Util.toGSER(ASN1Util.toASN1(der), gser);
+        assertEquals(GSER, gser.toString());
+        assertArrayEquals(der, ASN1Util.fromGSER(gser).encodeAll());
+    }
+
+    /**
+     * 型の付いた値
+     */
+    @Test
+    public void testIdentified() {
+        gser("set:{ 1, 2 }", "3106020101020102");
+        gser("set:{ }", "3100");
+        gser("context-3:{ TRUE }", "a3030101ff");
+        gser("application-1:{ NULL }", "61020500");
+        gser("private-40:{ 7 }", "ff28030201 07".replace(" ", ""));
+        gser("printablestring:\"JP\"", "13024a50");
+        gser("printablestring:\"\"", "1300");
+        gser("octetstring:{ '01'H }", "2403040101");
+    }
+
+    /**
+     * 8の倍数でない長さの BIT STRING
+     */
+    @Test
+    public void testBitString() {
+        gser("'1'B", "03020780");
+        gser("'101'B", "030205a0");
+        gser("'10101010'B", "030200aa");
+        gser("'101010101'B", "030307aa80");
+        gser("'111111111111111'B", "030301fffe");
+    }
+
+    /**
+     * 負の数、long を超える INTEGER
+     */
+    @Test
+    public void testInteger() {
+        gser("0", "020100");
+        gser("-1", "0201ff");
+        gser("127", "02017f");
+        gser("128", "02020080");
+        gser("-128", "020180");
+        gser("-129", "0202ff7f");
+        gser("9223372036854775807", "02087fffffffffffffff");
+        gser("-9223372036854775808", "02088000000000000000");
+        gser("9223372036854775808", "0209008000000000000000");
+        gser("12345678901234567890123", "020a029d42b64e76714244cb");
+        gser("-12345678901234567890123", "020afd62bd49b1898ebdbb35");
+    }
+
+    /**
+     * NamedValue は名前を読み捨てる
+     */
+    @Test
+    public void testNamedValue() {
+        byte[] der = ASN1Util.fromGSER("{ version 2, serial -5, algorithm 1.2.840.113549.1.1.11, critical TRUE,"
+                + " parameters NULL, name \"a\"\"b\", inner { id 1 } }").encodeAll();
+        assertArrayEquals(hex("30200201020201fb06092a864886f70d01010b0101ff05000c036122623003020101"), der);
+    }
+
+    /**
+     * dquote は2つ重ねる
+     */
+    @Test
+    public void testEscape() throws IOException {
+        String[] strs = {"", "\"", "\"\"", "a\"b", "\"a\"", "a\"\"\"b"};
+        for (String s : strs) {
+            StringBuilder gser = new StringBuilder();
+            ASN1Object utf8 = ASN1Util.fromGSER(quote(s));
+            assertEquals(s, utf8.getValue());
+            ASN1Util.toGSER(utf8, gser);
+            assertEquals(quote(s), gser.toString());
+        }
+    }
+
+    /**
+     * 形式の違うもの
+     */
+    @Test
+    public void testMalformed() {
+        String[] src = {"", "{ 1,", "\"abc", "'0A0'H", "'012'B", "'0A'X", "unknown:1", "context-x:{ }", "-", "TRUTH"};
+        for (String s : src) {
+            assertThrows(IllegalArgumentException.class, () -> ASN1Util.fromGSER(s), s);
+        }
+    }
+
+    private static void gser(String gser, String der) {
+        byte[] d = hex(der);
+        assertArrayEquals(d, ASN1Util.fromGSER(gser).encodeAll(), gser);
+        StringBuilder out = new StringBuilder();
+        try {
+            ASN1Util.toGSER(ASN1Util.toASN1(d), out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        assertEquals(gser, out.toString());
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    private static byte[] hex(String s) {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return b;
+    }
+}
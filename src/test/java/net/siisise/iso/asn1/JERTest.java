@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019-2022 Siisise Net.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.siisise.iso.asn1;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * JERWriter, JERReader
+ */
+public class JERTest {
+
+    private static final String[] DER = {
+        // SEQUENCE { INTEGER -1, 2^70, -129, BOOLEAN, NULL, OID, UTF8String, PrintableString,
+        // OCTET STRING, BIT STRING 3bit, SET, [0] }
+        "30460201ff02094000000000000000000202ff7f0101ff050006092a864886f70d01010b0c0961225cc3a9f09f9880"
+                + "13024a5004020a0b030205a03106020101020102a003020105",
+        // 名前のない汎用タグ 40
+        "3f2803020101"
+    };
+
+    /**
+     * 木から書いて読む
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (String hex : DER) {
+            byte[] der = hex(hex);
+            StringWriter json = new StringWriter();
+            ASN1Util.toJSON(ASN1Util.toASN1(der), json);
+            ASN1Object obj = ASN1Util.fromJSON(new StringReader(json.toString()));
+            assertArrayEquals(der, obj.encodeAll(), json.toString());
+        }
+    }
+
+    /**
+     * 木を作らずに書いても同じ
+     */
+    @Test
+    public void testStreamReader() throws IOException {
+        for (String hex : DER) {
+            byte[] der = hex(hex);
+            StringWriter tree = new StringWriter();
+            ASN1Util.toJSON(ASN1Util.toASN1(der), tree);
+            StringWriter stream = new StringWriter();
+            try (ASN1StreamReader in = new ASN1StreamReader(new ByteArrayInputStream(der))) {
+                ASN1Util.toJSON(in, stream);
+            }
+            assertEquals(tree.toString(), stream.toString());
+        }
+    }
+
+    /**
+     * 値の表現
+     */
+    @Test
+    public void testValues() throws IOException {
+        StringWriter json = new StringWriter();
+        ASN1Util.toJSON(ASN1Util.toASN1(hex("300a030205a00201ff0101ff")), json);
+        assertEquals("{\"type\":\"SEQUENCE\",\"value\":[{\"type\":\"BITSTRING\",\"value\":\"a0\",\"length\":3},"
+                + "{\"type\":\"INTEGER\",\"value\":-1},{\"type\":\"BOOLEAN\",\"value\":true}]}", json.toString());
+    }
+
+    /**
+     * 可変長の構造
+     */
+    @Test
+    public void testInefinite() throws IOException {
+        String json = "{\"type\":\"SEQUENCE\",\"inefinite\":true,\"value\":[{\"type\":\"INTEGER\",\"value\":5}]}";
+        ASN1Object obj = ASN1Util.fromJSON(new StringReader(json));
+        assertArrayEquals(hex("30800201050000"), obj.encodeAll());
+        StringWriter out = new StringWriter();
+        ASN1Util.toJSON(obj, out);
+        assertEquals(json, out.toString());
+    }
+
+    /**
+     * 形式の違うものは IOException
+     */
+    @Test
+    public void testMalformed() {
+        String[] src = {
+            "",
+            "[]",
+            "{\"value\":1}",
+            "{\"type\":\"INTEGER\"}",
+            "{\"type\":\"INTEGER\",\"value\":\"1\"}",
+            "{\"type\":\"INTEGER\",\"value\":1.5}",
+            "{\"type\":\"SEQUENCE\",\"value\":1}",
+            "{\"type\":\"BITSTRING\",\"value\":\"a0\",\"length\":9}",
+            "{\"type\":\"OCTETSTRING\",\"value\":\"0g\"}",
+            "{\"type\":\"struct\",\"class\":4,\"tag\":0,\"value\":[]}",
+            "{\"type\":\"struct\",\"value\":[]}",
+            "{\"type\":\"UNKNOWN\",\"value\":null}",
+            "{\"type\":\"INTEGER\",\"value\":1"
+        };
+        for (String s : src) {
+            assertThrows(IOException.class, () -> ASN1Util.fromJSON(new StringReader(s)), s);
+        }
+    }
+
+    private static byte[] hex(String s) {
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return b;
+    }
+}